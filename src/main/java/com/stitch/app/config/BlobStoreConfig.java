@@ -0,0 +1,78 @@
+package com.stitch.app.config;
+
+import com.stitch.app.service.BlobStore;
+import com.stitch.app.service.LocalBlobStore;
+import com.stitch.app.service.S3BlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.net.URI;
+import java.nio.file.Paths;
+
+/**
+ * Picks the upload BlobStore: file.storage.backend=local (default) keeps files under
+ * file.upload.dir, s3 puts them in an S3-compatible bucket. For a local MinIO set
+ * file.storage.s3.endpoint=http://localhost:9000, path-style-access=true and
+ * create-bucket=true.
+ */
+@Configuration
+public class BlobStoreConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "file.storage.backend", havingValue = "local", matchIfMissing = true)
+    public BlobStore localBlobStore(@Value("${file.upload.dir:./uploads}") String uploadDir,
+                                    @Value("${file.storage.sharded:true}") boolean sharded,
+                                    @Value("${file.storage.durable-writes:false}") boolean durableWrites) {
+        return new LocalBlobStore(Paths.get(uploadDir), sharded, durableWrites);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "file.storage.backend", havingValue = "s3")
+    public BlobStore s3BlobStore(@Value("${file.storage.s3.bucket}") String bucket,
+                                 @Value("${file.storage.s3.region:us-east-1}") String region,
+                                 @Value("${file.storage.s3.endpoint:}") String endpoint,
+                                 @Value("${file.storage.s3.path-style-access:false}") boolean pathStyleAccess,
+                                 @Value("${file.storage.s3.access-key:}") String accessKey,
+                                 @Value("${file.storage.s3.secret-key:}") String secretKey,
+                                 @Value("${file.storage.s3.key-prefix:}") String keyPrefix,
+                                 @Value("${file.storage.s3.multipart-threshold-bytes:16777216}") long multipartThresholdBytes,
+                                 @Value("${file.storage.s3.part-size-bytes:8388608}") int partSizeBytes,
+                                 @Value("${file.storage.s3.create-bucket:false}") boolean createBucket) {
+        // Without explicit keys the usual AWS chain applies (environment, profile, instance role)
+        AwsCredentialsProvider credentials = accessKey.isEmpty()
+                ? DefaultCredentialsProvider.create()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+        S3Configuration s3Configuration = S3Configuration.builder().pathStyleAccessEnabled(pathStyleAccess).build();
+
+        S3ClientBuilder clientBuilder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .serviceConfiguration(s3Configuration);
+        S3Presigner.Builder presignerBuilder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .serviceConfiguration(s3Configuration);
+        if (!endpoint.isEmpty()) {
+            clientBuilder.endpointOverride(URI.create(endpoint));
+            presignerBuilder.endpointOverride(URI.create(endpoint));
+        }
+
+        S3BlobStore store = new S3BlobStore(clientBuilder.build(), presignerBuilder.build(), bucket, keyPrefix,
+                multipartThresholdBytes, partSizeBytes);
+        if (createBucket) {
+            store.createBucketIfMissing();
+        }
+        return store;
+    }
+}
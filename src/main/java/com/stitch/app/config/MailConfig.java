@@ -3,17 +3,25 @@ package com.stitch.app.config;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.mail.MailProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.lang.NonNull;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.mail.javamail.MimeMessagePreparator;
 
+import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Configuration
 public class MailConfig {
@@ -23,8 +31,26 @@ public class MailConfig {
     @Autowired(required = false)
     private MailProperties mailProperties;
 
+    // Local stand-in that mimics SMTP latency and failures, for load-testing the mail dispatch pipeline
+    @Value("${mail.stub.enabled:false}")
+    private boolean stubEnabled;
+
+    @Value("${mail.stub.connect-latency-ms:50}")
+    private long stubConnectLatencyMs;
+
+    @Value("${mail.stub.per-message-latency-ms:5}")
+    private long stubPerMessageLatencyMs;
+
+    @Value("${mail.stub.failure-rate:0.0}")
+    private double stubFailureRate;
+
     @Bean
     public JavaMailSender javaMailSender() {
+        if (stubEnabled) {
+            log.info("mail.stub.enabled=true - creating simulated JavaMailSender");
+            return new SimulatedJavaMailSender(stubConnectLatencyMs, stubPerMessageLatencyMs, stubFailureRate);
+        }
+
         MailProperties mp = this.mailProperties;
         // If mail host is not configured, return a no-op sender to avoid application startup failure
         if (mp == null || mp.getHost() == null || mp.getHost().isEmpty()) {
@@ -86,4 +112,57 @@ public class MailConfig {
             // no-op
         }
     }
+
+    /**
+     * Behaves like an SMTP server without talking to one: each send pays a
+     * connection cost plus a per-message cost, and a configurable share of
+     * messages fails with the same MailSendException shape JavaMailSenderImpl uses.
+     */
+    static class SimulatedJavaMailSender extends NoOpJavaMailSender {
+
+        private final long connectLatencyMs;
+        private final long perMessageLatencyMs;
+        private final double failureRate;
+        private final AtomicLong delivered = new AtomicLong();
+
+        SimulatedJavaMailSender(long connectLatencyMs, long perMessageLatencyMs, double failureRate) {
+            this.connectLatencyMs = connectLatencyMs;
+            this.perMessageLatencyMs = perMessageLatencyMs;
+            this.failureRate = failureRate;
+        }
+
+        @Override
+        public void send(@NonNull SimpleMailMessage simpleMessage) {
+            send(new SimpleMailMessage[]{simpleMessage});
+        }
+
+        @Override
+        public void send(@NonNull SimpleMailMessage... simpleMessages) {
+            pause(connectLatencyMs + perMessageLatencyMs * simpleMessages.length);
+
+            Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+            for (SimpleMailMessage message : simpleMessages) {
+                if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                    failedMessages.put(message, new MessagingException("Simulated delivery failure"));
+                } else {
+                    delivered.incrementAndGet();
+                }
+            }
+            if (!failedMessages.isEmpty()) {
+                throw new MailSendException(failedMessages);
+            }
+        }
+
+        long getDelivered() {
+            return delivered.get();
+        }
+
+        private static void pause(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
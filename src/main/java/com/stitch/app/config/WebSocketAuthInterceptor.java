@@ -1,6 +1,9 @@
 package com.stitch.app.config;
 
+import com.stitch.app.entity.User;
 import com.stitch.app.security.JwtService;
+import com.stitch.app.security.PrincipalCache;
+import io.jsonwebtoken.Claims;
 import lombok.RequiredArgsConstructor;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
@@ -11,7 +14,6 @@ import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -19,7 +21,7 @@ import org.springframework.stereotype.Component;
 public class WebSocketAuthInterceptor implements ChannelInterceptor {
 
     private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
+    private final PrincipalCache principalCache;
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
@@ -28,49 +30,30 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
         if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand())) {
             String authToken = accessor.getFirstNativeHeader("Authorization");
 
-            UsernamePasswordAuthenticationToken authentication = null;
-
             if (authToken != null && authToken.startsWith("Bearer ")) {
                 String jwt = authToken.substring(7);
-                String username = jwtService.extractUsername(jwt);
+                // An invalid or expired token leaves the session anonymous
+                Claims claims = jwtService.verifyToken(jwt);
+                String username = claims != null ? claims.getSubject() : null;
 
                 if (username != null) {
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                    UserDetails userDetails = principalCache.load(username);
 
-                    if (jwtService.isTokenValid(jwt, userDetails)) {
-                        authentication = new UsernamePasswordAuthenticationToken(
-                            userDetails,
-                            null,
-                            userDetails.getAuthorities()
-                        );
+                    UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                        userDetails,
+                        null,
+                        userDetails.getAuthorities()
+                    );
 
-                        // set SecurityContext for other security checks
-                        SecurityContextHolder.getContext().setAuthentication(authentication);
-                    }
+                    // set SecurityContext for other security checks
+                    SecurityContextHolder.getContext().setAuthentication(authentication);
 
-                    // For STOMP user destination mapping, set the accessor user to a Principal whose name is the user's id
-                    try {
-                        // userDetails is actually our User entity which has getId()
-                        Object principalObj = userDetails;
-                        java.lang.reflect.Method getIdMethod = principalObj.getClass().getMethod("getId");
-                        Object idObj = getIdMethod.invoke(principalObj);
-                        String idStr = idObj != null ? String.valueOf(idObj) : username;
-                        WebSocketPrincipal wsPrincipal = new WebSocketPrincipal(idStr);
-                        accessor.setUser(wsPrincipal);
-                    } catch (Exception e) {
-                        // fallback: set the authenticated UserDetails as accessor user which will use username (email)
-                        if (authentication != null) {
-                            accessor.setUser(authentication);
-                        } else {
-                            // final fallback: set a simple Principal with the username
-                            final String nameFallback = username;
-                            accessor.setUser(new java.security.Principal() {
-                                @Override
-                                public String getName() {
-                                    return nameFallback != null ? nameFallback : "unknown";
-                                }
-                            });
-                        }
+                    // Resolve the session's user once; its name is the user id for STOMP user destinations
+                    if (userDetails instanceof User user) {
+                        accessor.setUser(WebSocketPrincipal.of(user));
+                    } else {
+                        // fallback: the authenticated UserDetails, whose name is the username (email)
+                        accessor.setUser(authentication);
                     }
                 }
             }
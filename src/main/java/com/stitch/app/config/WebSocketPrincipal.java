@@ -1,17 +1,54 @@
 package com.stitch.app.config;
 
+import com.stitch.app.entity.User;
+
 import java.security.Principal;
 
-public class WebSocketPrincipal implements Principal {
-    private final String name;
+/**
+ * The user behind a STOMP session, resolved once on CONNECT. The name is the user id, which
+ * is what user destinations (/user/{id}/queue/...) are keyed by. It is a snapshot: a changed
+ * display name shows up after the client reconnects.
+ */
+public final class WebSocketPrincipal implements Principal {
+    private final Long id;
+    private final String email;
+    private final User.Role role;
+    private final String displayName;
+
+    public WebSocketPrincipal(Long id, String email, User.Role role, String displayName) {
+        this.id = id;
+        this.email = email;
+        this.role = role;
+        this.displayName = displayName;
+    }
 
-    public WebSocketPrincipal(String name) {
-        this.name = name;
+    public static WebSocketPrincipal of(User user) {
+        return new WebSocketPrincipal(user.getId(), user.getEmail(), user.getRole(), user.getFullName());
     }
 
     @Override
     public String getName() {
-        return name;
+        return String.valueOf(id);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEmail() {
+        return email;
     }
-}
 
+    public User.Role getRole() {
+        return role;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public String toString() {
+        return "WebSocketPrincipal[id=" + id + ", role=" + role + "]";
+    }
+}
@@ -1,9 +1,19 @@
 package com.stitch.app.controller;
 
+import com.stitch.app.dto.CacheStats;
 import com.stitch.app.dto.ChangePasswordRequest;
+import com.stitch.app.dto.MailDispatchStats;
+import com.stitch.app.dto.MessageWriteBehindStats;
+import com.stitch.app.dto.UploadGcStats;
 import com.stitch.app.dto.UserDTO;
 import com.stitch.app.entity.User;
 import com.stitch.app.repository.UserRepository;
+import com.stitch.app.security.JwtService;
+import com.stitch.app.security.PrincipalCache;
+import com.stitch.app.service.MailDispatchService;
+import com.stitch.app.service.MessageWriteBehindService;
+import com.stitch.app.service.UnreadCounterService;
+import com.stitch.app.service.UploadGarbageCollector;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -21,6 +31,12 @@ public class AdminController {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final MailDispatchService mailDispatchService;
+    private final PrincipalCache principalCache;
+    private final JwtService jwtService;
+    private final UploadGarbageCollector uploadGarbageCollector;
+    private final UnreadCounterService unreadCounterService;
+    private final MessageWriteBehindService messageWriteBehindService;
 
     @GetMapping("/users")
     @PreAuthorize("hasAuthority('ADMIN')")
@@ -47,6 +63,7 @@ public class AdminController {
 
         user.setIsActive(!user.getIsActive());
         userRepository.save(user);
+        principalCache.evict(user.getEmail());
 
         return ResponseEntity.ok(UserDTO.fromUser(user));
     }
@@ -61,6 +78,49 @@ public class AdminController {
         return ResponseEntity.ok(customers);
     }
 
+    @GetMapping("/mail/stats")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<MailDispatchStats> getMailStats() {
+        return ResponseEntity.ok(mailDispatchService.getStats());
+    }
+
+    @GetMapping("/messages/write-behind/stats")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<MessageWriteBehindStats> getMessageWriteBehindStats() {
+        return ResponseEntity.ok(messageWriteBehindService.getStats());
+    }
+
+    @GetMapping("/auth/principal-cache/stats")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<CacheStats> getPrincipalCacheStats() {
+        return ResponseEntity.ok(principalCache.getStats());
+    }
+
+    @GetMapping("/unread-counters/cache/stats")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<CacheStats> getUnreadCounterCacheStats() {
+        return ResponseEntity.ok(unreadCounterService.getCacheStats());
+    }
+
+    @GetMapping("/uploads/gc/stats")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<UploadGcStats> getUploadGcStats() {
+        return ResponseEntity.ok(uploadGarbageCollector.getStats());
+    }
+
+    // Runs a collection now; returns the current stats if one is already in progress
+    @PostMapping("/uploads/gc/run")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<UploadGcStats> runUploadGc() {
+        return ResponseEntity.ok(uploadGarbageCollector.run());
+    }
+
+    @GetMapping("/auth/token-cache/stats")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<CacheStats> getTokenCacheStats() {
+        return ResponseEntity.ok(jwtService.getVerifiedTokenCacheStats());
+    }
+
     @PutMapping("/change-password")
     public ResponseEntity<?> changePassword(
             @AuthenticationPrincipal User user,
@@ -77,6 +137,7 @@ public class AdminController {
         // Update password
         currentUser.setPassword(passwordEncoder.encode(request.getNewPassword()));
         userRepository.save(currentUser);
+        principalCache.evict(currentUser.getEmail());
 
         return ResponseEntity.ok("Password changed successfully");
     }
@@ -1,17 +1,20 @@
 package com.stitch.app.controller;
 
 import com.stitch.app.dto.AppointmentDTO;
+import com.stitch.app.dto.AppointmentFeedFilter;
+import com.stitch.app.dto.AppointmentSummaryDTO;
+import com.stitch.app.dto.CursorPage;
 import com.stitch.app.entity.Appointment;
 import com.stitch.app.entity.User;
 import com.stitch.app.repository.UserRepository;
 import com.stitch.app.service.AppointmentService;
-import com.stitch.app.service.FileStorageService;
+import com.stitch.app.service.FileServingService;
+import com.stitch.app.service.ImageVariantService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -20,9 +23,9 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/appointments")
@@ -30,7 +33,7 @@ import java.util.List;
 public class AppointmentController {
 
     private final AppointmentService appointmentService;
-    private final FileStorageService fileStorageService;
+    private final FileServingService fileServingService;
     private final UserRepository userRepository;
 
     // Customer endpoints
@@ -41,14 +44,14 @@ public class AppointmentController {
             @RequestPart(value = "images", required = false) MultipartFile[] images,
             @AuthenticationPrincipal User user) {
         Appointment appointment = appointmentService.createAppointment(dto, images, user);
-        return ResponseEntity.ok(appointment);
+        return ResponseEntity.ok(appointmentService.withImages(appointment));
     }
 
     @GetMapping("/customer/my-appointments")
     @PreAuthorize("hasAuthority('CUSTOMER')")
     public ResponseEntity<List<Appointment>> getMyAppointments(@AuthenticationPrincipal User user) {
         List<Appointment> appointments = appointmentService.getAppointmentsByCustomer(user.getId());
-        return ResponseEntity.ok(appointments);
+        return ResponseEntity.ok(appointmentService.withImages(appointments));
     }
 
     // New: allow a customer to fetch their appointments by id path and enforce that the authenticated user matches
@@ -61,7 +64,7 @@ public class AppointmentController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
         List<Appointment> appointments = appointmentService.getAppointmentsByCustomer(customerId);
-        return ResponseEntity.ok(appointments);
+        return ResponseEntity.ok(appointmentService.withImages(appointments));
     }
 
     @GetMapping("/customer/{id}")
@@ -70,7 +73,7 @@ public class AppointmentController {
             @PathVariable Long id,
             @AuthenticationPrincipal User user) {
         Appointment appointment = appointmentService.getAppointmentByIdAndCustomer(id, user.getId());
-        return ResponseEntity.ok(appointment);
+        return ResponseEntity.ok(appointmentService.withImages(appointment));
     }
 
     @PutMapping("/customer/{id}")
@@ -89,7 +92,7 @@ public class AppointmentController {
                 id, dto, images, deleteIndices, customer.getId()
         );
 
-        return ResponseEntity.ok(appointment);
+        return ResponseEntity.ok(appointmentService.withImages(appointment));
     }
 
     @DeleteMapping("/customer/{id}")
@@ -102,11 +105,23 @@ public class AppointmentController {
     }
 
     // Admin endpoints
+    // Keyset-paginated feed: pass the returned nextCursor back as ?cursor= to load the next page
     @GetMapping("/admin/all")
     @PreAuthorize("hasAuthority('ADMIN')")
-    public ResponseEntity<List<Appointment>> getAllAppointments() {
-        List<Appointment> appointments = appointmentService.getAllAppointments();
-        return ResponseEntity.ok(appointments);
+    public ResponseEntity<CursorPage<AppointmentSummaryDTO>> getAllAppointments(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false, defaultValue = "20") int limit,
+            @RequestParam(value = "status", required = false) Appointment.Status status,
+            @RequestParam(value = "customerId", required = false) Long customerId,
+            @RequestParam(value = "deadlineFrom", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate deadlineFrom,
+            @RequestParam(value = "deadlineTo", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate deadlineTo) {
+        AppointmentFeedFilter filter = AppointmentFeedFilter.builder()
+                .status(status)
+                .customerId(customerId)
+                .deadlineFrom(deadlineFrom)
+                .deadlineTo(deadlineTo)
+                .build();
+        return ResponseEntity.ok(appointmentService.getAppointmentFeed(filter, cursor, limit));
     }
 
     // Admin: fetch appointments for any customer by id
@@ -114,21 +129,21 @@ public class AppointmentController {
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<List<Appointment>> getAppointmentsByCustomerAdmin(@PathVariable Long customerId) {
         List<Appointment> appointments = appointmentService.getAppointmentsByCustomer(customerId);
-        return ResponseEntity.ok(appointments);
+        return ResponseEntity.ok(appointmentService.withImages(appointments));
     }
 
     @GetMapping("/admin/{id}")
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<Appointment> getAppointmentByIdAdmin(@PathVariable Long id) {
         Appointment appointment = appointmentService.getAppointmentById(id);
-        return ResponseEntity.ok(appointment);
+        return ResponseEntity.ok(appointmentService.withImages(appointment));
     }
 
     @PutMapping("/admin/{id}/approve")
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<Appointment> approveAppointment(@PathVariable Long id) {
         Appointment appointment = appointmentService.approveAppointment(id);
-        return ResponseEntity.ok(appointment);
+        return ResponseEntity.ok(appointmentService.withImages(appointment));
     }
 
     @PutMapping("/admin/{id}/decline")
@@ -137,7 +152,7 @@ public class AppointmentController {
             @PathVariable Long id,
             @RequestBody DeclineRequest request) {
         Appointment appointment = appointmentService.declineAppointment(id, request.getReason());
-        return ResponseEntity.ok(appointment);
+        return ResponseEntity.ok(appointmentService.withImages(appointment));
     }
 
     @PutMapping("/admin/{id}/status")
@@ -146,7 +161,7 @@ public class AppointmentController {
             @PathVariable Long id,
             @RequestBody StatusUpdateRequest request) {
         Appointment appointment = appointmentService.updateAppointmentStatus(id, request.getStatus());
-        return ResponseEntity.ok(appointment);
+        return ResponseEntity.ok(appointmentService.withImages(appointment));
     }
 
     @DeleteMapping("/admin/{id}")
@@ -159,68 +174,40 @@ public class AppointmentController {
     // Serve image for admin
     @GetMapping("/admin/{id}/image")
     @PreAuthorize("hasAuthority('ADMIN')")
-    public ResponseEntity<Resource> getAppointmentImageAdmin(@PathVariable Long id,
-                                                             @RequestParam(value = "index", required = false, defaultValue = "0") int index) {
+    public void getAppointmentImageAdmin(@PathVariable Long id,
+                                         @RequestParam(value = "index", required = false, defaultValue = "0") int index,
+                                         @RequestParam(value = "size", required = false) String size,
+                                         HttpServletRequest request,
+                                         HttpServletResponse response) throws IOException {
         Appointment appointment = appointmentService.getAppointmentById(id);
-        String fileNames = appointment.getInspoImageUrl();
-        if (fileNames == null || fileNames.isEmpty()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        String[] parts = fileNames.split(",");
-        if (index < 0 || index >= parts.length) {
-            return ResponseEntity.badRequest().build();
-        }
-        String fileName = parts[index];
-
-        try {
-            Path filePath = fileStorageService.loadFile(fileName);
-            Resource resource = new UrlResource(filePath.toUri());
-            if (!resource.exists() || !resource.isReadable()) {
-                return ResponseEntity.notFound().build();
-            }
-            String contentType = Files.probeContentType(filePath);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filePath.getFileName().toString() + "\"")
-                    .contentType(MediaType.parseMediaType(contentType == null ? "application/octet-stream" : contentType))
-                    .body(resource);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
-        }
+        serveInspoImage(appointment, index, size, request, response);
     }
 
     // Serve image for customer (only their own appointment)
     @GetMapping("/customer/{id}/image")
     @PreAuthorize("hasAuthority('CUSTOMER')")
-    public ResponseEntity<Resource> getAppointmentImageCustomer(@PathVariable Long id,
-                                                                @AuthenticationPrincipal User user,
-                                                                @RequestParam(value = "index", required = false, defaultValue = "0") int index) {
+    public void getAppointmentImageCustomer(@PathVariable Long id,
+                                            @AuthenticationPrincipal User user,
+                                            @RequestParam(value = "index", required = false, defaultValue = "0") int index,
+                                            @RequestParam(value = "size", required = false) String size,
+                                            HttpServletRequest request,
+                                            HttpServletResponse response) throws IOException {
         Appointment appointment = appointmentService.getAppointmentByIdAndCustomer(id, user.getId());
-        String fileNames = appointment.getInspoImageUrl();
-        if (fileNames == null || fileNames.isEmpty()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        String[] parts = fileNames.split(",");
-        if (index < 0 || index >= parts.length) {
-            return ResponseEntity.badRequest().build();
-        }
-        String fileName = parts[index];
+        serveInspoImage(appointment, index, size, request, response);
+    }
 
-        try {
-            Path filePath = fileStorageService.loadFile(fileName);
-            Resource resource = new UrlResource(filePath.toUri());
-            if (!resource.exists() || !resource.isReadable()) {
-                return ResponseEntity.notFound().build();
-            }
-            String contentType = Files.probeContentType(filePath);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filePath.getFileName().toString() + "\"")
-                    .contentType(MediaType.parseMediaType(contentType == null ? "application/octet-stream" : contentType))
-                    .body(resource);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
+    // size=thumb|medium serves a downscaled variant when one has been generated
+    private void serveInspoImage(Appointment appointment, int index, String size,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<String> fileName = appointmentService.getImageFileName(appointment, index);
+        if (fileName.isEmpty()) {
+            // No images at all is a 404, an index past the last one a 400
+            boolean hasImages = index != 0 && appointmentService.getImageFileName(appointment, 0).isPresent();
+            response.setStatus(hasImages ? HttpServletResponse.SC_BAD_REQUEST : HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
+        fileServingService.serve(fileName.get(), ImageVariantService.Variant.fromParam(size),
+                FileServingService.CachePolicy.PRIVATE, request, response);
     }
 
     // --- New endpoints for bill upload/download/delete ---
@@ -231,7 +218,7 @@ public class AppointmentController {
     public ResponseEntity<Appointment> uploadBillByAdmin(@PathVariable Long appointmentId,
                                                          @RequestPart("bill") MultipartFile billFile) {
         Appointment updated = appointmentService.uploadBillByAdmin(appointmentId, billFile);
-        return ResponseEntity.ok(updated);
+        return ResponseEntity.ok(appointmentService.withImages(updated));
     }
 
     @DeleteMapping("/admin/{appointmentId}/bill")
@@ -244,36 +231,12 @@ public class AppointmentController {
     // Customer/Admin download bill - customer can only download for their own appointment
     @GetMapping("/{appointmentId}/bill")
     @PreAuthorize("hasAnyAuthority('ADMIN','CUSTOMER')")
-    public ResponseEntity<Resource> downloadBill(@PathVariable Long appointmentId,
-                                                 @AuthenticationPrincipal User user) {
+    public void downloadBill(@PathVariable Long appointmentId,
+                             @AuthenticationPrincipal User user,
+                             HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
         Appointment appointment = appointmentService.getAppointmentById(appointmentId);
-
-        // If current user is customer, ensure ownership
-        if (user != null && user.getRole() == User.Role.CUSTOMER) {
-            if (!appointment.getCustomer().getId().equals(user.getId())) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-            }
-        }
-
-        String fileName = appointment.getBillFileName();
-        if (fileName == null || fileName.isEmpty()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        try {
-            Path filePath = fileStorageService.loadFile(fileName);
-            Resource resource = new UrlResource(filePath.toUri());
-            if (!resource.exists() || !resource.isReadable()) {
-                return ResponseEntity.notFound().build();
-            }
-            String contentType = Files.probeContentType(filePath);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filePath.getFileName().toString() + "\"")
-                    .contentType(MediaType.parseMediaType(contentType == null ? "application/octet-stream" : contentType))
-                    .body(resource);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
-        }
+        serveAppointmentFile(appointment, appointment.getBillFileName(), user, request, response);
     }
 
     // --- New endpoints for measurements upload/download/delete ---
@@ -284,7 +247,7 @@ public class AppointmentController {
     public ResponseEntity<Appointment> uploadMeasurementsByAdmin(@PathVariable Long appointmentId,
                                                                   @RequestPart("measurements") MultipartFile measurementsFile) {
         Appointment updated = appointmentService.uploadMeasurementsByAdmin(appointmentId, measurementsFile);
-        return ResponseEntity.ok(updated);
+        return ResponseEntity.ok(appointmentService.withImages(updated));
     }
 
     @DeleteMapping("/admin/{appointmentId}/measurements")
@@ -297,36 +260,29 @@ public class AppointmentController {
     // Customer/Admin download measurements - customer can only download for their own appointment
     @GetMapping("/{appointmentId}/measurements")
     @PreAuthorize("hasAnyAuthority('ADMIN','CUSTOMER')")
-    public ResponseEntity<Resource> downloadMeasurements(@PathVariable Long appointmentId,
-                                                         @AuthenticationPrincipal User user) {
+    public void downloadMeasurements(@PathVariable Long appointmentId,
+                                     @AuthenticationPrincipal User user,
+                                     HttpServletRequest request,
+                                     HttpServletResponse response) throws IOException {
         Appointment appointment = appointmentService.getAppointmentById(appointmentId);
+        serveAppointmentFile(appointment, appointment.getMeasurementsFileName(), user, request, response);
+    }
 
+    private void serveAppointmentFile(Appointment appointment, String fileName, User user,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
         // If current user is customer, ensure ownership
         if (user != null && user.getRole() == User.Role.CUSTOMER) {
             if (!appointment.getCustomer().getId().equals(user.getId())) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+                response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+                return;
             }
         }
 
-        String fileName = appointment.getMeasurementsFileName();
         if (fileName == null || fileName.isEmpty()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        try {
-            Path filePath = fileStorageService.loadFile(fileName);
-            Resource resource = new UrlResource(filePath.toUri());
-            if (!resource.exists() || !resource.isReadable()) {
-                return ResponseEntity.notFound().build();
-            }
-            String contentType = Files.probeContentType(filePath);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filePath.getFileName().toString() + "\"")
-                    .contentType(MediaType.parseMediaType(contentType == null ? "application/octet-stream" : contentType))
-                    .body(resource);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
+        fileServingService.serve(fileName, FileServingService.CachePolicy.PRIVATE, request, response);
     }
 }
 
@@ -9,16 +9,16 @@ import com.stitch.app.dto.ChangePasswordRequest;
 import com.stitch.app.entity.Notification;
 import com.stitch.app.entity.User;
 import com.stitch.app.repository.UserRepository;
+import com.stitch.app.security.PrincipalCache;
 import com.stitch.app.service.AuthenticationService;
-import com.stitch.app.service.NotificationService;
+import com.stitch.app.service.MessageService;
+import com.stitch.app.service.NotificationFanoutService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/auth")
 @RequiredArgsConstructor
@@ -27,7 +27,9 @@ public class AuthenticationController {
     private final AuthenticationService authService;
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
-    private final NotificationService notificationService;
+    private final NotificationFanoutService notificationFanoutService;
+    private final PrincipalCache principalCache;
+    private final MessageService messageService;
 
     @PostMapping("/register")
     public ResponseEntity<AuthenticationResponse> register(@RequestBody RegisterRequest request) {
@@ -57,6 +59,7 @@ public class AuthenticationController {
 
         User current = userRepository.findById(user.getId())
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        String previousEmail = current.getEmail();
 
         boolean profileChanged = false;
         StringBuilder changes = new StringBuilder();
@@ -84,6 +87,10 @@ public class AuthenticationController {
         }
 
         current = userRepository.save(current);
+        principalCache.evict(previousEmail);
+        if (current.getRole() == User.Role.ADMIN) {
+            messageService.evictChatAdmin();
+        }
 
         // Notify admins if customer updated their profile (and if user is a customer)
         if (profileChanged && current.getRole() == User.Role.CUSTOMER) {
@@ -94,16 +101,12 @@ public class AuthenticationController {
     }
 
     private void notifyAdminsAboutProfileUpdate(User customer, String changes) {
-        List<User> admins = userRepository.findByRole(User.Role.ADMIN);
-
-        for (User admin : admins) {
-            notificationService.createNotification(
-                    admin,
-                    "Customer Profile Updated",
-                    customer.getFullName() + " has updated their profile. " + changes,
-                    Notification.NotificationType.PROFILE_UPDATED
-            );
-        }
+        notificationFanoutService.notifyRole(
+                User.Role.ADMIN,
+                "Customer Profile Updated",
+                customer.getFullName() + " has updated their profile. " + changes,
+                Notification.NotificationType.PROFILE_UPDATED
+        );
     }
 
     @PutMapping("/change-password")
@@ -124,6 +127,7 @@ public class AuthenticationController {
         // Update password
         current.setPassword(passwordEncoder.encode(request.getNewPassword()));
         userRepository.save(current);
+        principalCache.evict(current.getEmail());
 
         return ResponseEntity.ok("Password changed successfully");
     }
@@ -1,26 +1,23 @@
 package com.stitch.app.controller;
 
+import com.stitch.app.dto.CursorPage;
 import com.stitch.app.dto.GalleryImageDTO;
 import com.stitch.app.dto.GalleryUpdateRequest;
 import com.stitch.app.entity.GalleryImage;
 import com.stitch.app.entity.User;
-import com.stitch.app.service.FileStorageService;
+import com.stitch.app.service.FileServingService;
 import com.stitch.app.service.GalleryService;
+import com.stitch.app.service.ImageVariantService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.nio.file.Path;
-import java.nio.file.Files;
 import java.io.IOException;
-import java.util.List;
 
 @RestController
 @RequestMapping("/api/gallery")
@@ -28,7 +25,7 @@ import java.util.List;
 public class GalleryController {
 
     private final GalleryService galleryService;
-    private final FileStorageService fileStorageService;
+    private final FileServingService fileServingService;
 
     @PostMapping
     @PreAuthorize("hasAuthority('ADMIN')")
@@ -39,44 +36,35 @@ public class GalleryController {
             @AuthenticationPrincipal User admin) {
 
         GalleryImage img = galleryService.uploadImage(file, title, description, admin.getEmail());
-        long likes = galleryService.countLikes(img.getId());
-        boolean likedByCurrentUser = false;
-        return ResponseEntity.ok(GalleryImageDTO.from(img, likes, likedByCurrentUser));
+        return ResponseEntity.ok(GalleryImageDTO.from(img, false));
     }
 
+    // Keyset-paginated listing: pass the returned nextCursor back as ?cursor= to load the next page
     @GetMapping
-    public ResponseEntity<List<GalleryImageDTO>> listAll(@AuthenticationPrincipal User user) {
-        String userEmail = user != null ? user.getEmail() : null;
+    public ResponseEntity<CursorPage<GalleryImageDTO>> listAll(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false, defaultValue = "24") int limit,
+            @AuthenticationPrincipal User user) {
         Long userId = user != null ? user.getId() : null;
-        System.out.println("GET /api/gallery - Authenticated user: " + userEmail + " (ID: " + userId + ")");
-        List<GalleryImageDTO> dtos = galleryService.listAll(userEmail);
-        return ResponseEntity.ok(dtos);
+        return ResponseEntity.ok(galleryService.listPage(userId, cursor, limit));
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<GalleryImageDTO> getById(@PathVariable Long id, @AuthenticationPrincipal User user) {
         GalleryImage img = galleryService.getById(id);
-        long likes = galleryService.countLikes(id);
         boolean likedByCurrentUser = galleryService.isLikedByUser(id, user != null ? user.getEmail() : null);
-        return ResponseEntity.ok(GalleryImageDTO.from(img, likes, likedByCurrentUser));
+        return ResponseEntity.ok(GalleryImageDTO.from(img, likedByCurrentUser));
     }
 
     @GetMapping("/file/{fileName}")
-    public ResponseEntity<Resource> getFile(@PathVariable String fileName) {
-        try {
-            Path filePath = fileStorageService.loadFile(fileName);
-            Resource resource = new UrlResource(filePath.toUri());
-            if (!resource.exists() || !resource.isReadable()) {
-                return ResponseEntity.notFound().build();
-            }
-            String contentType = Files.probeContentType(filePath);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filePath.getFileName().toString() + "\"")
-                    .contentType(MediaType.parseMediaType(contentType == null ? "application/octet-stream" : contentType))
-                    .body(resource);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
-        }
+    public void getFile(@PathVariable String fileName,
+                        @RequestParam(value = "size", required = false) String size,
+                        HttpServletRequest request,
+                        HttpServletResponse response) throws IOException {
+        // Stored names never change content, so browsers and proxies may cache them for good.
+        // size=thumb|medium serves a downscaled variant when one has been generated.
+        fileServingService.serve(fileName, ImageVariantService.Variant.fromParam(size),
+                FileServingService.CachePolicy.PUBLIC_IMMUTABLE, request, response);
     }
 
     @PostMapping("/{id}/like")
@@ -92,9 +80,7 @@ public class GalleryController {
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<GalleryImageDTO> updateGallery(@PathVariable Long id, @RequestBody GalleryUpdateRequest request) {
         var updated = galleryService.updateGalleryImage(id, request.getTitle(), request.getDescription());
-        long likes = galleryService.countLikes(id);
-        boolean likedByCurrentUser = false;
-        return ResponseEntity.ok(GalleryImageDTO.from(updated, likes, likedByCurrentUser));
+        return ResponseEntity.ok(GalleryImageDTO.from(updated, false));
     }
 
     @DeleteMapping("/{id}")
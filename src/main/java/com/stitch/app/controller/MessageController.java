@@ -1,10 +1,14 @@
 package com.stitch.app.controller;
 
+import com.stitch.app.config.WebSocketPrincipal;
+import com.stitch.app.dto.ChatReadRequest;
+import com.stitch.app.dto.ChatTypingRequest;
 import com.stitch.app.dto.ChatUserDTO;
+import com.stitch.app.dto.CursorPage;
 import com.stitch.app.dto.MessageDTO;
 import com.stitch.app.dto.SendMessageRequest;
 import com.stitch.app.entity.User;
-import com.stitch.app.repository.UserRepository;
+import com.stitch.app.service.ChatReadStateService;
 import com.stitch.app.service.MessageService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -17,7 +21,6 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
-import java.util.List;
 
 @RestController
 @RequestMapping("/api/messages")
@@ -27,7 +30,7 @@ public class MessageController {
     private static final Logger logger = LoggerFactory.getLogger(MessageController.class);
 
     private final MessageService messageService;
-    private final UserRepository userRepository;
+    private final ChatReadStateService chatReadStateService;
 
     // Send message via REST API
     @PostMapping("/send")
@@ -39,38 +42,58 @@ public class MessageController {
         return ResponseEntity.ok(message);
     }
 
-    // WebSocket endpoint for sending messages
+    // WebSocket endpoint for sending messages; the sender comes from the principal resolved on CONNECT
     @MessageMapping("/chat.send")
     public void sendMessageViaWebSocket(
             @Payload SendMessageRequest request,
             Principal principal) {
-        // Resolve sender from principal name (which is user's email)
-        User sender = userRepository.findByEmail(principal.getName())
-                .orElseThrow(() -> new RuntimeException("Sender not found"));
-        messageService.sendMessage(request, sender);
+        messageService.sendMessage(request, sessionUser(principal));
     }
 
-    // Get chat history between current user and another user
+    // Read receipt from an open chat window; coalesced in memory, no database write per event
+    @MessageMapping("/chat.read")
+    public void markReadViaWebSocket(
+            @Payload ChatReadRequest request,
+            Principal principal) {
+        chatReadStateService.markRead(sessionUser(principal).getId(), request.getPeerId(), request.getUpToMessageId());
+    }
+
+    // Typing indicator, forwarded to the other user and never stored
+    @MessageMapping("/chat.typing")
+    public void typingViaWebSocket(
+            @Payload ChatTypingRequest request,
+            Principal principal) {
+        chatReadStateService.typing(sessionUser(principal).getId(), request.getReceiverId(), request.isTyping());
+    }
+
+    // Get chat history between current user and another user, one page at a time (oldest first).
+    // Without cursors the latest messages come back; pass nextCursor as ?before= to scroll back,
+    // or the newest id held as ?after= to catch up after a reconnect
     @GetMapping("/chat/{otherUserId}")
     @PreAuthorize("hasAnyAuthority('ADMIN', 'CUSTOMER')")
-    public ResponseEntity<List<MessageDTO>> getChatHistory(
+    public ResponseEntity<CursorPage<MessageDTO>> getChatHistory(
             @PathVariable Long otherUserId,
+            @RequestParam(value = "before", required = false) Long before,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "limit", required = false, defaultValue = "50") int limit,
             @AuthenticationPrincipal User user) {
-        List<MessageDTO> messages = messageService.getChatHistory(user, otherUserId);
-        return ResponseEntity.ok(messages);
+        return ResponseEntity.ok(messageService.getChatHistory(user, otherUserId, before, after, limit));
     }
 
-    // For admin: Get all customers who have sent messages
+    // For admin: inbox of customer conversations, most recent activity first.
+    // Pass the returned nextCursor back as ?before= to load the next page
     @GetMapping("/customers")
     @PreAuthorize("hasAuthority('ADMIN')")
-    public ResponseEntity<List<ChatUserDTO>> getCustomersWithMessages(@AuthenticationPrincipal User user) {
+    public ResponseEntity<CursorPage<ChatUserDTO>> getCustomersWithMessages(
+            @RequestParam(value = "before", required = false) Long before,
+            @RequestParam(value = "limit", required = false, defaultValue = "20") int limit,
+            @AuthenticationPrincipal User user) {
         // Diagnostic log to show which principal is calling this endpoint
         logger.info("GET /api/messages/customers called by principal={}, userId={}",
                 user != null ? user.getEmail() : null,
                 user != null ? user.getId() : null);
 
-        List<ChatUserDTO> customers = messageService.getCustomersWithMessages();
-        return ResponseEntity.ok(customers);
+        return ResponseEntity.ok(messageService.getCustomersWithMessages(before, limit));
     }
 
     // For customer: Get admin info to chat with
@@ -81,7 +104,7 @@ public class MessageController {
         return ResponseEntity.ok(admin);
     }
 
-    // Mark messages as read
+    // Mark the whole conversation read at once; open chat windows send /app/chat.read receipts instead
     @PostMapping("/mark-read/{senderId}")
     @PreAuthorize("hasAnyAuthority('ADMIN', 'CUSTOMER')")
     public ResponseEntity<Void> markMessagesAsRead(
@@ -99,4 +122,11 @@ public class MessageController {
         Long count = messageService.getUnreadCount(user);
         return ResponseEntity.ok(count);
     }
+
+    private static WebSocketPrincipal sessionUser(Principal principal) {
+        if (!(principal instanceof WebSocketPrincipal user)) {
+            throw new RuntimeException("WebSocket session is not authenticated");
+        }
+        return user;
+    }
 }
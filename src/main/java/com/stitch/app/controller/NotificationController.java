@@ -1,5 +1,7 @@
 package com.stitch.app.controller;
 
+import com.stitch.app.dto.CursorPage;
+import com.stitch.app.dto.MarkAllReadResponse;
 import com.stitch.app.dto.NotificationDTO;
 import com.stitch.app.entity.Notification;
 import com.stitch.app.entity.User;
@@ -43,19 +45,34 @@ public class NotificationController {
         return ResponseEntity.ok(dtos);
     }
 
+    // Catch-up for the STOMP push: everything after the last id the client has seen, plus a short
+    // window below it for ids that committed late; the client drops ids it already holds
+    @GetMapping("/since")
+    public ResponseEntity<CursorPage<NotificationDTO>> getNotificationsSince(
+            @AuthenticationPrincipal User user,
+            @RequestParam(value = "lastId", required = false, defaultValue = "0") long lastId,
+            @RequestParam(value = "limit", required = false, defaultValue = "100") int limit) {
+        if (user == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(notificationService.getNotificationsSince(user.getId(), lastId, limit));
+    }
+
     @PutMapping("/{id}/read")
     public ResponseEntity<Void> markAsRead(@PathVariable Long id) {
         notificationService.markAsRead(id);
         return ResponseEntity.ok().build();
     }
 
+    // Pass the newest id the client has shown as upToId so later arrivals stay unread
     @PutMapping("/read-all")
-    public ResponseEntity<Void> markAllAsRead(@AuthenticationPrincipal User user) {
+    public ResponseEntity<MarkAllReadResponse> markAllAsRead(
+            @AuthenticationPrincipal User user,
+            @RequestParam(value = "upToId", required = false) Long upToId) {
         if (user == null) {
             return ResponseEntity.status(401).build();
         }
-        notificationService.markAllAsRead(user.getId());
-        return ResponseEntity.ok().build();
+        return ResponseEntity.ok(notificationService.markAllAsRead(user.getId(), upToId));
     }
 
     @GetMapping("/count")
@@ -63,7 +80,7 @@ public class NotificationController {
         if (user == null) {
             return ResponseEntity.status(401).build();
         }
-        long count = notificationService.getUnreadNotifications(user.getId()).size();
+        long count = notificationService.getUnreadCount(user.getId());
         return ResponseEntity.ok(count);
     }
 }
\ No newline at end of file
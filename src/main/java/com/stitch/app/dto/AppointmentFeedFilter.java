@@ -0,0 +1,20 @@
+package com.stitch.app.dto;
+
+import com.stitch.app.entity.Appointment;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppointmentFeedFilter {
+    private Appointment.Status status;
+    private LocalDate deadlineFrom;
+    private LocalDate deadlineTo;
+    private Long customerId;
+}
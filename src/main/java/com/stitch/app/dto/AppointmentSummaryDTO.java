@@ -0,0 +1,29 @@
+package com.stitch.app.dto;
+
+import com.stitch.app.entity.Appointment;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Slim row for the admin appointment feed, built directly by a JPQL constructor expression
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppointmentSummaryDTO {
+    private Long id;
+    private Long customerId;
+    private String customerName;
+    private String phoneNumber;
+    private Integer age;
+    private LocalDate deadline;
+    private Appointment.Status status;
+    private String inspoImageUrl;
+    private Integer imageCount;
+    private String billFileName;
+    private String measurementsFileName;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
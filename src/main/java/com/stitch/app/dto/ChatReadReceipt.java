@@ -0,0 +1,16 @@
+package com.stitch.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Pushed to the peer on /user/{id}/queue/read-receipts when the reader's high-water mark advances
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatReadReceipt {
+    private Long readerId;
+    private Long upToMessageId;
+}
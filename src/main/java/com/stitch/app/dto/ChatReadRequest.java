@@ -0,0 +1,16 @@
+package com.stitch.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Sent to /app/chat.read: everything from peerId up to this message id has been seen
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatReadRequest {
+    private Long peerId;
+    private Long upToMessageId;
+}
@@ -0,0 +1,16 @@
+package com.stitch.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Pushed to the receiver on /user/{id}/queue/typing
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatTypingEvent {
+    private Long userId;
+    private boolean typing;
+}
@@ -0,0 +1,16 @@
+package com.stitch.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Sent to /app/chat.typing while the user types (typing = true) and when they stop
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatTypingRequest {
+    private Long receiverId;
+    private boolean typing;
+}
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -14,5 +16,10 @@ public class ChatUserDTO {
     private String fullName;
     private String email;
     private Long unreadCount;
+    // Inbox summary; only filled for the admin's conversation list
+    private Long lastMessageId;
+    private String lastMessagePreview;
+    private Long lastSenderId;
+    private LocalDateTime lastActivityAt;
 }
 
@@ -1,13 +1,17 @@
 package com.stitch.app.dto;
 
 import com.stitch.app.entity.GalleryImage;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class GalleryImageDTO {
     private Long id;
     private String title;
@@ -18,7 +22,7 @@ public class GalleryImageDTO {
     private Long likeCount;
     private Boolean likedByCurrentUser;
 
-    public static GalleryImageDTO from(GalleryImage img, long likes, boolean likedByCurrentUser) {
+    public static GalleryImageDTO from(GalleryImage img, boolean likedByCurrentUser) {
         return GalleryImageDTO.builder()
                 .id(img.getId())
                 .title(img.getTitle())
@@ -26,7 +30,7 @@ public class GalleryImageDTO {
                 .fileName(img.getFileName())
                 .uploadedByEmail(img.getUploadedBy() == null ? null : img.getUploadedBy().getEmail())
                 .createdAt(img.getCreatedAt())
-                .likeCount(likes)
+                .likeCount(img.getLikeCount())
                 .likedByCurrentUser(likedByCurrentUser)
                 .build();
     }
@@ -0,0 +1,25 @@
+package com.stitch.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailDispatchStats {
+    private int queueDepth;
+    private int remainingCapacity;
+    private long enqueued;
+    private long sent;
+    private long failed;
+    private long rejected;
+    // Part of rejected: dropped without waiting because the queue was full at commit time
+    private long droppedAfterCommit;
+    private long retried;
+    private long batches;
+    private double avgBatchSendMillis;
+    private double maxBatchSendMillis;
+}
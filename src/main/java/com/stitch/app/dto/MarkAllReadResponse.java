@@ -0,0 +1,18 @@
+package com.stitch.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MarkAllReadResponse {
+    // Number of notifications this call marked read
+    private int updated;
+    // Notifications newer than this id were left unread
+    private Long upToId;
+    private long unreadCount;
+}
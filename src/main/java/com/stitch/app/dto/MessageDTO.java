@@ -20,5 +20,6 @@ public class MessageDTO {
     private String content;
     private Boolean isRead;
     private LocalDateTime createdAt;
+    private String clientMessageId;
 }
 
@@ -0,0 +1,27 @@
+package com.stitch.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageWriteBehindStats {
+    private boolean enabled;
+    private String ackMode;
+    private int queueDepth;
+    private int remainingCapacity;
+    private long accepted;
+    private long persisted;
+    private long duplicates;
+    private long dropped;
+    private long rejected;
+    private long failed;
+    private long retried;
+    private long batches;
+    private double avgBatchFlushMillis;
+    private double maxBatchFlushMillis;
+}
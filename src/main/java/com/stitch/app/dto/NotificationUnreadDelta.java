@@ -0,0 +1,18 @@
+package com.stitch.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Pushed when notifications are marked read; a pushed NotificationDTO counts as +1 on its own
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationUnreadDelta {
+    private Long userId;
+    private long delta;
+    // Unread count right after the change that produced this delta
+    private long unreadCount;
+}
@@ -12,5 +12,7 @@ import lombok.NoArgsConstructor;
 public class SendMessageRequest {
     private Long receiverId;
     private String content;
+    // Optional idempotency key chosen by the client; a retried send with the same key is stored once
+    private String clientMessageId;
 }
 
@@ -0,0 +1,19 @@
+package com.stitch.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredFile {
+    private String fileName;
+    private long size;
+    private String contentType;
+    private String sha256;
+    // True when the content was already stored and no bytes were written
+    private boolean deduplicated;
+}
@@ -0,0 +1,27 @@
+package com.stitch.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadGcStats {
+    private boolean running;
+    private long runs;
+    private LocalDateTime lastRunStartedAt;
+    private long lastRunMillis;
+    private long lastScannedFiles;
+    private long lastQuarantinedFiles;
+    private long lastQuarantinedBytes;
+    private long lastRestoredFiles;
+    private long lastDeletedFiles;
+    private long lastReclaimedBytes;
+    private long totalDeletedFiles;
+    private long totalReclaimedBytes;
+}
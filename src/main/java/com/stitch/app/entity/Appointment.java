@@ -1,5 +1,6 @@
 package com.stitch.app.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
@@ -11,7 +12,13 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "appointments")
+@Table(name = "appointments", indexes = {
+        // Keyset indexes for the admin feed: (created_at, id) plus the filtered variants
+        @Index(name = "idx_appointments_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_appointments_status_created_at_id", columnList = "status, created_at, id"),
+        @Index(name = "idx_appointments_customer_created_at_id", columnList = "customer_id, created_at, id"),
+        @Index(name = "idx_appointments_deadline", columnList = "deadline")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -38,9 +45,20 @@ public class Appointment {
     @Column(nullable = false)
     private LocalDate deadline;
 
+    // Pre-appointment_images storage: comma-joined file names. AppointmentImageMigrator moves
+    // them into appointment_images and clears the column.
+    @JsonIgnore
     @Column(name = "inspo_image_url")
+    private String legacyInspoImageUrl;
+
+    // Comma-joined image file names in display order, kept in the API for existing clients.
+    // Not loaded with the entity: AppointmentImageService.fillImages sets both for responses
+    @Transient
     private String inspoImageUrl;
 
+    @Transient
+    private Integer imageCount;
+
     @Column(name = "bill_file_name")
     private String billFileName;
 
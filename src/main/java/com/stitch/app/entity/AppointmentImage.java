@@ -0,0 +1,57 @@
+package com.stitch.app.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * One inspiration image of an appointment. Ordinals are assigned on append and never
+ * rewritten, so removing an image only deletes its own row; the public "index" of an
+ * image is its position in ordinal order.
+ */
+@Entity
+@Table(name = "appointment_images", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_appointment_images_appointment_ordinal", columnNames = {"appointment_id", "ordinal"})
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppointmentImage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "appointment_id", nullable = false)
+    @ToString.Exclude
+    private Appointment appointment;
+
+    @Column(nullable = false)
+    private Integer ordinal;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    private Long size;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(length = 64)
+    private String sha256;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
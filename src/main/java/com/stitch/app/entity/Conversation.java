@@ -0,0 +1,61 @@
+package com.stitch.app.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Summary of the chat between a customer and an admin, upserted with every message so the
+ * admin inbox never has to scan messages. Unread counts live in unread_counters.
+ */
+@Entity
+@Table(name = "conversations", indexes = {
+        // Admin inbox: newest conversation first, keyset on last_message_id
+        @Index(name = "idx_conversations_admin_last_message", columnList = "admin_id, last_message_id")
+})
+@IdClass(Conversation.Key.class)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Conversation {
+
+    @Id
+    @Column(name = "customer_id")
+    private Long customerId;
+
+    @Id
+    @Column(name = "admin_id")
+    private Long adminId;
+
+    @Column(name = "last_message_id", nullable = false)
+    private Long lastMessageId;
+
+    @Column(name = "last_message_preview", length = Conversation.PREVIEW_LENGTH)
+    private String lastMessagePreview;
+
+    @Column(name = "last_sender_id", nullable = false)
+    private Long lastSenderId;
+
+    @Column(name = "last_activity_at", nullable = false)
+    private LocalDateTime lastActivityAt;
+
+    public static final int PREVIEW_LENGTH = 200;
+
+    public static String preview(String content) {
+        return content.length() > PREVIEW_LENGTH ? content.substring(0, PREVIEW_LENGTH) : content;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long customerId;
+        private Long adminId;
+    }
+}
@@ -9,7 +9,9 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "gallery_images")
+@Table(name = "gallery_images", indexes = {
+        @Index(name = "idx_gallery_images_created_at_id", columnList = "created_at, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -37,6 +39,12 @@ public class GalleryImage {
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
+    // Denormalized count of gallery_likes rows. Only changed through the atomic UPDATEs in
+    // GalleryImageRepository, so entity saves never write back a stale value.
+    @Builder.Default
+    @Column(name = "like_count", updatable = false, columnDefinition = "bigint default 0 not null")
+    private long likeCount = 0L;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
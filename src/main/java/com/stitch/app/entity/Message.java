@@ -9,7 +9,14 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        // Chat history pages: one index range scan per direction of a conversation
+        @Index(name = "idx_messages_sender_receiver_id", columnList = "sender_id, receiver_id, id"),
+        // Per-user recount of unread messages by the unread counter reconciler
+        @Index(name = "idx_messages_receiver_is_read", columnList = "receiver_id, is_read"),
+        // Idempotency key: a client retry of the same send is inserted at most once
+        @Index(name = "uk_messages_sender_client_message_id", columnList = "sender_id, client_message_id", unique = true)
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -31,12 +38,17 @@ public class Message {
     @Column(nullable = false, columnDefinition = "TEXT")
     private String content;
 
+    @Column(name = "client_message_id", length = Message.CLIENT_MESSAGE_ID_LENGTH)
+    private String clientMessageId;
+
     @Column(name = "is_read", nullable = false)
     private Boolean isRead = false;
 
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
+    public static final int CLIENT_MESSAGE_ID_LENGTH = 64;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -0,0 +1,66 @@
+package com.stitch.app.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A notification that still has to be delivered. Rows are written in the same
+ * transaction as the business change and drained by NotificationOutboxRelay,
+ * which deletes them once delivered. Either recipientId (one user) or
+ * recipientRole (broadcast) is set.
+ */
+@Entity
+@Table(name = "notification_outbox", indexes = {
+        @Index(name = "idx_notification_outbox_appointment", columnList = "appointment_id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationOutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "recipient_id")
+    private Long recipientId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "recipient_role")
+    private User.Role recipientRole;
+
+    // Plain column rather than a relation: the relay only needs the id
+    @Column(name = "appointment_id")
+    private Long appointmentId;
+
+    @Column(nullable = false)
+    private String title;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String message;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Notification.NotificationType type;
+
+    @Builder.Default
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
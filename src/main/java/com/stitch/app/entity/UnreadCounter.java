@@ -0,0 +1,62 @@
+package com.stitch.app.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Number of unread notifications or messages for a user. Message counters exist per
+ * conversation (peerId = the sender) plus one total row with peerId = 0; notifications
+ * only have the total row. Maintained by UnreadCounterService in the same transaction
+ * as the rows they count.
+ */
+@Entity
+@Table(name = "unread_counters", indexes = {
+        // The primary key leads with kind; per-user inbox lookups need user_id first
+        @Index(name = "idx_unread_counters_user_kind", columnList = "user_id, kind")
+})
+@IdClass(UnreadCounter.Key.class)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UnreadCounter {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private Kind kind;
+
+    @Id
+    @Column(name = "peer_id")
+    private Long peerId;
+
+    @Column(nullable = false)
+    private long count;
+
+    // Bumped on every change; guards the in-memory cache against out-of-order writes
+    @Column(nullable = false)
+    private long version;
+
+    public enum Kind {
+        NOTIFICATION,
+        MESSAGE
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private Kind kind;
+        private Long peerId;
+    }
+}
@@ -0,0 +1,35 @@
+package com.stitch.app.repository;
+
+import com.stitch.app.entity.AppointmentImage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AppointmentImageRepository extends JpaRepository<AppointmentImage, Long> {
+
+    List<AppointmentImage> findByAppointment_IdOrderByOrdinalAsc(Long appointmentId);
+
+    // Walks the (appointment_id, ordinal) unique index; appointments only have a handful of images
+    @Query(value = "SELECT file_name FROM appointment_images WHERE appointment_id = :appointmentId " +
+                   "ORDER BY ordinal OFFSET :position LIMIT 1", nativeQuery = true)
+    Optional<String> findFileNameAtPosition(@Param("appointmentId") Long appointmentId, @Param("position") int position);
+
+    // File names of a page of appointments in one query, as (appointment id, file name) in display order
+    @Query("SELECT i.appointment.id, i.fileName FROM AppointmentImage i " +
+           "WHERE i.appointment.id IN :appointmentIds ORDER BY i.appointment.id, i.ordinal")
+    List<Object[]> findFileNamesByAppointmentIds(@Param("appointmentIds") Collection<Long> appointmentIds);
+
+    @Query("SELECT COALESCE(MAX(i.ordinal), -1) FROM AppointmentImage i WHERE i.appointment.id = :appointmentId")
+    int findMaxOrdinal(@Param("appointmentId") Long appointmentId);
+
+    @Modifying
+    @Query("DELETE FROM AppointmentImage i WHERE i.appointment.id = :appointmentId")
+    int deleteByAppointmentId(@Param("appointmentId") Long appointmentId);
+}
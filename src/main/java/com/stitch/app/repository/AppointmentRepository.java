@@ -1,19 +1,37 @@
 package com.stitch.app.repository;
 
 import com.stitch.app.entity.Appointment;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
+public interface AppointmentRepository extends JpaRepository<Appointment, Long>, AppointmentRepositoryCustom {
     // Use customer_id to query by the relationship's ID
     List<Appointment> findByCustomer_Id(Long customerId);
     List<Appointment> findByStatus(Appointment.Status status);
     List<Appointment> findByDeadlineBetween(LocalDate start, LocalDate end);
-    List<Appointment> findAllByOrderByCreatedAtDesc();
     Optional<Appointment> findByIdAndCustomer_Id(Long id, Long customerId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM Appointment a WHERE a.id = :id")
+    Optional<Appointment> lockById(@Param("id") Long id);
+
+    // Appointments still holding comma-joined image names, read without locks in id order
+    @Query(value = "SELECT id FROM appointments WHERE inspo_image_url IS NOT NULL AND id > :afterId " +
+                   "ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<Long> findLegacyImageBatch(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    // Locks those still legacy; SKIP LOCKED keeps the migrator off rows being edited
+    @Query(value = "SELECT id FROM appointments WHERE id IN (:ids) AND inspo_image_url IS NOT NULL " +
+                   "ORDER BY id FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockLegacyImages(@Param("ids") Collection<Long> ids);
 }
\ No newline at end of file
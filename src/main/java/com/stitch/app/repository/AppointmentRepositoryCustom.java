@@ -0,0 +1,12 @@
+package com.stitch.app.repository;
+
+import com.stitch.app.dto.AppointmentFeedFilter;
+import com.stitch.app.dto.AppointmentSummaryDTO;
+import com.stitch.app.dto.KeysetCursor;
+
+import java.util.List;
+
+public interface AppointmentRepositoryCustom {
+    // Keyset page ordered by (createdAt DESC, id DESC); after == null starts from the newest appointment
+    List<AppointmentSummaryDTO> findFeedPage(AppointmentFeedFilter filter, KeysetCursor after, int limit);
+}
@@ -0,0 +1,64 @@
+package com.stitch.app.repository;
+
+import com.stitch.app.dto.AppointmentFeedFilter;
+import com.stitch.app.dto.AppointmentSummaryDTO;
+import com.stitch.app.dto.KeysetCursor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AppointmentRepositoryCustomImpl implements AppointmentRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<AppointmentSummaryDTO> findFeedPage(AppointmentFeedFilter filter, KeysetCursor after, int limit) {
+        // Only the predicates that are actually used end up in the query, so the planner
+        // can pick the matching composite index instead of a generic "(:p IS NULL OR ...)" plan.
+        // a.customer.id reads the FK column and does not join or load the customer. Image names
+        // are filled in per page afterwards; the legacy column stands in for them until then.
+        StringBuilder jpql = new StringBuilder(
+                "SELECT new com.stitch.app.dto.AppointmentSummaryDTO(" +
+                "a.id, a.customer.id, a.customerName, a.phoneNumber, a.age, a.deadline, a.status, " +
+                "a.legacyInspoImageUrl, 0, a.billFileName, a.measurementsFileName, a.createdAt, a.updatedAt) " +
+                "FROM Appointment a WHERE 1 = 1");
+        Map<String, Object> params = new HashMap<>();
+
+        if (filter != null) {
+            if (filter.getStatus() != null) {
+                jpql.append(" AND a.status = :status");
+                params.put("status", filter.getStatus());
+            }
+            if (filter.getCustomerId() != null) {
+                jpql.append(" AND a.customer.id = :customerId");
+                params.put("customerId", filter.getCustomerId());
+            }
+            if (filter.getDeadlineFrom() != null) {
+                jpql.append(" AND a.deadline >= :deadlineFrom");
+                params.put("deadlineFrom", filter.getDeadlineFrom());
+            }
+            if (filter.getDeadlineTo() != null) {
+                jpql.append(" AND a.deadline <= :deadlineTo");
+                params.put("deadlineTo", filter.getDeadlineTo());
+            }
+        }
+
+        if (after != null) {
+            jpql.append(" AND (a.createdAt < :afterCreatedAt OR (a.createdAt = :afterCreatedAt AND a.id < :afterId))");
+            params.put("afterCreatedAt", after.getCreatedAt());
+            params.put("afterId", after.getId());
+        }
+
+        jpql.append(" ORDER BY a.createdAt DESC, a.id DESC");
+
+        TypedQuery<AppointmentSummaryDTO> query = entityManager.createQuery(jpql.toString(), AppointmentSummaryDTO.class);
+        params.forEach(query::setParameter);
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+}
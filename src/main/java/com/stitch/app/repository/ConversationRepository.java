@@ -0,0 +1,62 @@
+package com.stitch.app.repository;
+
+import com.stitch.app.dto.ChatUserDTO;
+import com.stitch.app.entity.Conversation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ConversationRepository extends JpaRepository<Conversation, Conversation.Key> {
+
+    // Moves the conversation to the new message; an older message committing late never rewinds it.
+    // Roles are resolved here by primary key, so a send never has to load the receiver; pairs that
+    // are not customer/admin insert nothing
+    @Modifying
+    @Query(value = "INSERT INTO conversations (customer_id, admin_id, last_message_id, last_message_preview, last_sender_id, last_activity_at) " +
+                   "SELECT CASE WHEN s.role = 'CUSTOMER' THEN s.id ELSE r.id END, CASE WHEN s.role = 'ADMIN' THEN s.id ELSE r.id END, " +
+                   ":messageId, :preview, s.id, :sentAt " +
+                   "FROM users s JOIN users r ON r.id = :receiverId WHERE s.id = :senderId " +
+                   "AND ((s.role = 'CUSTOMER' AND r.role = 'ADMIN') OR (s.role = 'ADMIN' AND r.role = 'CUSTOMER')) " +
+                   "ON CONFLICT (customer_id, admin_id) DO UPDATE SET last_message_id = EXCLUDED.last_message_id, " +
+                   "last_message_preview = EXCLUDED.last_message_preview, last_sender_id = EXCLUDED.last_sender_id, " +
+                   "last_activity_at = EXCLUDED.last_activity_at " +
+                   "WHERE conversations.last_message_id < EXCLUDED.last_message_id", nativeQuery = true)
+    int recordMessage(@Param("senderId") Long senderId, @Param("receiverId") Long receiverId,
+                      @Param("messageId") Long messageId, @Param("preview") String preview,
+                      @Param("sentAt") LocalDateTime sentAt);
+
+    // Same upsert for every customer/admin thread at once, from the newest message of each
+    @Modifying
+    @Query(value = "INSERT INTO conversations (customer_id, admin_id, last_message_id, last_message_preview, last_sender_id, last_activity_at) " +
+                   "SELECT DISTINCT ON (customer_id, admin_id) customer_id, admin_id, id, LEFT(content, " + Conversation.PREVIEW_LENGTH + "), sender_id, created_at " +
+                   "FROM (SELECT m.id, m.content, m.sender_id, m.created_at, " +
+                   "      CASE WHEN s.role = 'CUSTOMER' THEN m.sender_id ELSE m.receiver_id END AS customer_id, " +
+                   "      CASE WHEN s.role = 'ADMIN' THEN m.sender_id ELSE m.receiver_id END AS admin_id " +
+                   "      FROM messages m JOIN users s ON s.id = m.sender_id JOIN users r ON r.id = m.receiver_id " +
+                   "      WHERE (s.role = 'CUSTOMER' AND r.role = 'ADMIN') OR (s.role = 'ADMIN' AND r.role = 'CUSTOMER')) t " +
+                   "ORDER BY customer_id, admin_id, id DESC " +
+                   "ON CONFLICT (customer_id, admin_id) DO UPDATE SET last_message_id = EXCLUDED.last_message_id, " +
+                   "last_message_preview = EXCLUDED.last_message_preview, last_sender_id = EXCLUDED.last_sender_id, " +
+                   "last_activity_at = EXCLUDED.last_activity_at " +
+                   "WHERE conversations.last_message_id < EXCLUDED.last_message_id", nativeQuery = true)
+    int backfillFromMessages();
+
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM conversations)", nativeQuery = true)
+    boolean existsAny();
+
+    // One inbox page with the admin's unread count per customer, newest activity first
+    @Query("SELECT new com.stitch.app.dto.ChatUserDTO(u.id, u.fullName, u.email, COALESCE(uc.count, 0L), " +
+           "c.lastMessageId, c.lastMessagePreview, c.lastSenderId, c.lastActivityAt) " +
+           "FROM Conversation c JOIN User u ON u.id = c.customerId " +
+           "LEFT JOIN UnreadCounter uc ON uc.userId = c.adminId " +
+           "AND uc.kind = 'MESSAGE' AND uc.peerId = c.customerId " +
+           "WHERE c.adminId = :adminId AND c.lastMessageId < :beforeId ORDER BY c.lastMessageId DESC")
+    List<ChatUserDTO> findInboxPage(@Param("adminId") Long adminId, @Param("beforeId") Long beforeId, Pageable pageable);
+}
@@ -2,12 +2,30 @@ package com.stitch.app.repository;
 
 import com.stitch.app.entity.GalleryImage;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
-
 @Repository
-public interface GalleryImageRepository extends JpaRepository<GalleryImage, Long> {
-    List<GalleryImage> findAllByOrderByCreatedAtDesc();
-}
+public interface GalleryImageRepository extends JpaRepository<GalleryImage, Long>, GalleryImageRepositoryCustom {
+
+    @Modifying
+    @Query("UPDATE GalleryImage i SET i.likeCount = i.likeCount + 1 WHERE i.id = :id")
+    int incrementLikeCount(@Param("id") Long id);
 
+    @Modifying
+    @Query("UPDATE GalleryImage i SET i.likeCount = i.likeCount - 1 WHERE i.id = :id AND i.likeCount > 0")
+    int decrementLikeCount(@Param("id") Long id);
+
+    @Query("SELECT i.likeCount FROM GalleryImage i WHERE i.id = :id")
+    long findLikeCountById(@Param("id") Long id);
+
+    // Rewrites like_count only for rows that drifted from the real number of likes
+    @Modifying
+    @Query(value = "UPDATE gallery_images g SET like_count = c.actual " +
+            "FROM (SELECT gi.id, COUNT(l.id) AS actual FROM gallery_images gi " +
+            "LEFT JOIN gallery_likes l ON l.image_id = gi.id GROUP BY gi.id) c " +
+            "WHERE g.id = c.id AND g.like_count <> c.actual", nativeQuery = true)
+    int reconcileLikeCounts();
+}
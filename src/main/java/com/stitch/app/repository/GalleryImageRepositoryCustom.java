@@ -0,0 +1,11 @@
+package com.stitch.app.repository;
+
+import com.stitch.app.dto.GalleryImageDTO;
+import com.stitch.app.dto.KeysetCursor;
+
+import java.util.List;
+
+public interface GalleryImageRepositoryCustom {
+    // One round-trip page of images with like counts and, when currentUserId is set, the liked-by-me flag
+    List<GalleryImageDTO> findPageWithLikes(Long currentUserId, KeysetCursor after, int limit);
+}
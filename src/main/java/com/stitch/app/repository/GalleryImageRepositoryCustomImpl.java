@@ -0,0 +1,44 @@
+package com.stitch.app.repository;
+
+import com.stitch.app.dto.GalleryImageDTO;
+import com.stitch.app.dto.KeysetCursor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.util.List;
+
+public class GalleryImageRepositoryCustomImpl implements GalleryImageRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<GalleryImageDTO> findPageWithLikes(Long currentUserId, KeysetCursor after, int limit) {
+        // The liked-by-me subquery is only evaluated for the rows in the page and uses the
+        // (image_id, user_id) unique index on gallery_likes
+        String likedExpression = currentUserId != null
+                ? "CASE WHEN EXISTS (SELECT 1 FROM GalleryLike m WHERE m.image = i AND m.user.id = :userId) THEN true ELSE false END"
+                : "false";
+
+        StringBuilder jpql = new StringBuilder(
+                "SELECT new com.stitch.app.dto.GalleryImageDTO(" +
+                "i.id, i.title, i.description, i.fileName, u.email, i.createdAt, i.likeCount, " + likedExpression + ") " +
+                "FROM GalleryImage i LEFT JOIN i.uploadedBy u");
+        if (after != null) {
+            jpql.append(" WHERE i.createdAt < :afterCreatedAt OR (i.createdAt = :afterCreatedAt AND i.id < :afterId)");
+        }
+        jpql.append(" ORDER BY i.createdAt DESC, i.id DESC");
+
+        TypedQuery<GalleryImageDTO> query = entityManager.createQuery(jpql.toString(), GalleryImageDTO.class);
+        if (currentUserId != null) {
+            query.setParameter("userId", currentUserId);
+        }
+        if (after != null) {
+            query.setParameter("afterCreatedAt", after.getCreatedAt());
+            query.setParameter("afterId", after.getId());
+        }
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+}
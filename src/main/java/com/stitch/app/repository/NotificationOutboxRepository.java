@@ -0,0 +1,29 @@
+package com.stitch.app.repository;
+
+import com.stitch.app.entity.NotificationOutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutboxEvent, Long> {
+
+    // SKIP LOCKED lets several relay instances drain the outbox without waiting on each other
+    @Query(value = "SELECT * FROM notification_outbox WHERE attempts < :maxAttempts " +
+                   "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<NotificationOutboxEvent> lockNextBatch(@Param("limit") int limit, @Param("maxAttempts") int maxAttempts);
+
+    @Query(value = "SELECT * FROM notification_outbox WHERE id = :id FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Optional<NotificationOutboxEvent> lockById(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE NotificationOutboxEvent e SET e.attempts = e.attempts + 1, e.lastError = :error WHERE e.id = :id")
+    int recordFailure(@Param("id") Long id, @Param("error") String error);
+
+    void deleteByAppointmentId(Long appointmentId);
+}
@@ -1,15 +1,46 @@
 package com.stitch.app.repository;
 
 import com.stitch.app.entity.Notification;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface NotificationRepository extends JpaRepository<Notification, Long> {
     List<Notification> findByUserIdOrderByCreatedAtDesc(Long userId);
     List<Notification> findByUserIdAndIsReadFalseOrderByCreatedAtDesc(Long userId);
-    List<Notification> findByUserIdAndIsReadFalse(Long userId);
+    // Catch-up after a reconnect; served by idx_notifications_user_id_id
+    List<Notification> findByUserIdAndIdGreaterThanOrderByIdAsc(Long userId, Long lastId, Pageable pageable);
+    // Lower ids that may have committed after lastId was delivered; served by idx_notifications_user_id_created_at
+    List<Notification> findByUserIdAndIdLessThanAndCreatedAtGreaterThanEqualOrderByIdAsc(Long userId, Long lastId,
+                                                                                         LocalDateTime from, Pageable pageable);
     void deleteByAppointmentId(Long appointmentId);
+
+    @Query("SELECT n.user.id, COUNT(n) FROM Notification n " +
+           "WHERE n.appointment.id = :appointmentId AND n.isRead = false GROUP BY n.user.id")
+    List<Object[]> countUnreadByUserForAppointment(@Param("appointmentId") Long appointmentId);
+
+    // Flips one notification; returns 0 if it was already read, so the unread counter moves only once
+    @Modifying
+    @Query("UPDATE Notification n SET n.isRead = true WHERE n.id = :id AND n.isRead = false")
+    int markAsReadIfUnread(@Param("id") Long id);
+
+    // One UPDATE for all of a user's unread notifications up to the watermark
+    @Modifying
+    @Query("UPDATE Notification n SET n.isRead = true " +
+           "WHERE n.user.id = :userId AND n.isRead = false AND n.id <= :upToId")
+    int markAllAsRead(@Param("userId") Long userId, @Param("upToId") Long upToId);
+
+    @Query("SELECT n.createdAt FROM Notification n WHERE n.user.id = :userId AND n.id = :id")
+    Optional<LocalDateTime> findCreatedAtByUserIdAndId(@Param("userId") Long userId, @Param("id") Long id);
+
+    @Query("SELECT MAX(n.id) FROM Notification n WHERE n.user.id = :userId")
+    Optional<Long> findMaxIdByUserId(@Param("userId") Long userId);
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.stitch.app.repository;
+
+import com.stitch.app.entity.StoredBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, String> {
+
+    // Transaction-scoped advisory lock serializing store/release of one blob, even before its row exists
+    @Query(value = "SELECT 1 FROM (SELECT pg_advisory_xact_lock(hashtextextended(:fileName, 0))) l", nativeQuery = true)
+    Integer lockFileName(@Param("fileName") String fileName);
+
+    @Modifying
+    @Query(value = "INSERT INTO stored_blobs (file_name, sha256, size, content_type, ref_count, created_at) " +
+                   "VALUES (:fileName, :sha256, :size, :contentType, 1, now()) " +
+                   "ON CONFLICT (file_name) DO UPDATE SET ref_count = stored_blobs.ref_count + 1", nativeQuery = true)
+    int addReference(@Param("fileName") String fileName, @Param("sha256") String sha256,
+                     @Param("size") long size, @Param("contentType") String contentType);
+
+    @Modifying
+    @Query("UPDATE StoredBlob b SET b.refCount = b.refCount - 1 WHERE b.fileName = :fileName AND b.refCount > 0")
+    int removeReference(@Param("fileName") String fileName);
+
+    @Query("SELECT COUNT(b) > 0 FROM StoredBlob b WHERE b.fileName = :fileName AND b.refCount > 0")
+    boolean isReferenced(@Param("fileName") String fileName);
+
+    @Modifying
+    @Query("DELETE FROM StoredBlob b WHERE b.fileName = :fileName AND b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("fileName") String fileName);
+}
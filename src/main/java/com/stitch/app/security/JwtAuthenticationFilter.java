@@ -1,5 +1,6 @@
 package com.stitch.app.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -12,7 +13,6 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -27,7 +27,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
 
     private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
+    private final PrincipalCache principalCache;
 
     @Override
     protected void doFilterInternal(
@@ -102,33 +102,31 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         jwt = tokenCandidate;
 
         try {
-            // Extract user email from JWT
-            userEmail = jwtService.extractUsername(jwt);
-
-            // If user email exists and user is not already authenticated
-            if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
-
-                // Validate token
-                if (jwtService.isTokenValid(jwt, userDetails)) {
-                    UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                            userDetails,
-                            null,
-                            userDetails.getAuthorities()
-                    );
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-
-                    // Log debug info about authenticated user
-                    String authorities = userDetails.getAuthorities().stream()
-                            .map(GrantedAuthority::getAuthority)
-                            .collect(Collectors.joining(","));
-                    logger.info("JWT authentication successful for user='{}' authorities='{}' request='{} {}'",
-                            userEmail, authorities, request.getMethod(), request.getRequestURI());
-                } else {
-                    logger.error("JWT token is NOT VALID for user: {} for request {} {} - Token may be expired or invalid",
-                            userEmail, request.getMethod(), request.getRequestURI());
-                }
+            // Verify signature and expiry once; repeat tokens come from the verified-token cache
+            Claims claims = jwtService.verifyToken(jwt);
+            userEmail = claims != null ? claims.getSubject() : null;
+
+            if (claims == null) {
+                logger.error("JWT token is NOT VALID for request {} {} - Token may be expired or invalid",
+                        request.getMethod(), request.getRequestURI());
+            } else if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                // If user email exists and user is not already authenticated
+                UserDetails userDetails = principalCache.load(userEmail);
+
+                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                        userDetails,
+                        null,
+                        userDetails.getAuthorities()
+                );
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authToken);
+
+                // Log debug info about authenticated user
+                String authorities = userDetails.getAuthorities().stream()
+                        .map(GrantedAuthority::getAuthority)
+                        .collect(Collectors.joining(","));
+                logger.info("JWT authentication successful for user='{}' authorities='{}' request='{} {}'",
+                        userEmail, authorities, request.getMethod(), request.getRequestURI());
             }
         } catch (Exception e) {
             // Log the exception if needed
@@ -1,6 +1,11 @@
 package com.stitch.app.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.stitch.app.dto.CacheStats;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.security.Keys;
@@ -8,11 +13,16 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Service
@@ -27,6 +37,14 @@ public class JwtService {
     @Value("${jwt.allowed.clock.skew:0}")
     private long allowedClockSkewSeconds;
 
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private long verifiedCacheMaxSize = 10_000;
+
+    // Built lazily from the injected properties; a racing first call just builds an identical instance
+    private volatile Key signInKey;
+    private volatile JwtParser jwtParser;
+    private volatile Cache<String, Claims> verifiedTokens;
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -54,42 +72,127 @@ public class JwtService {
                 .compact();
     }
 
-    public boolean isTokenValid(String token, UserDetails userDetails) {
+    /**
+     * Verifies signature and expiry once and returns the claims, or null if the token is
+     * invalid or expired. Tokens verified before are served from a cache keyed by the token's
+     * SHA-256 hash, whose entries expire together with the token.
+     */
+    public Claims verifyToken(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        String tokenHash = sha256(token);
+        Claims cached = getVerifiedTokens().getIfPresent(tokenHash);
+        if (cached != null) {
+            return isExpired(cached) ? null : cached;
+        }
         try {
-            final String username = extractUsername(token);
-            return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
+            Claims claims = extractAllClaims(token);
+            if (claims.getExpiration() != null) {
+                getVerifiedTokens().put(tokenHash, claims);
+            }
+            return claims;
         } catch (JwtException | IllegalArgumentException ex) {
             // token invalid or expired
-            return false;
+            return null;
         }
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public boolean isTokenValid(String token, UserDetails userDetails) {
+        Claims claims = verifyToken(token);
+        return claims != null && userDetails.getUsername().equals(claims.getSubject());
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    public CacheStats getVerifiedTokenCacheStats() {
+        return CacheStats.from(getVerifiedTokens());
+    }
+
+    private boolean isExpired(Claims claims) {
+        Date expiration = claims.getExpiration();
+        return expiration.getTime() + TimeUnit.SECONDS.toMillis(allowedClockSkewSeconds) < System.currentTimeMillis();
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSignInKey())
-                .setAllowedClockSkewSeconds(allowedClockSkewSeconds)
-                .build()
+        return getJwtParser()
                 .parseClaimsJws(token)
                 .getBody();
     }
 
+    private JwtParser getJwtParser() {
+        JwtParser parser = jwtParser;
+        if (parser == null) {
+            parser = Jwts.parserBuilder()
+                    .setSigningKey(getSignInKey())
+                    .setAllowedClockSkewSeconds(allowedClockSkewSeconds)
+                    .build();
+            jwtParser = parser;
+        }
+        return parser;
+    }
+
+    private Cache<String, Claims> getVerifiedTokens() {
+        Cache<String, Claims> cache = verifiedTokens;
+        if (cache == null) {
+            synchronized (this) {
+                cache = verifiedTokens;
+                if (cache == null) {
+                    cache = Caffeine.newBuilder()
+                            .maximumSize(verifiedCacheMaxSize)
+                            .expireAfter(new TokenExpiry())
+                            .recordStats()
+                            .build();
+                    verifiedTokens = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
     private Key getSignInKey() {
+        Key key = signInKey;
+        if (key != null) {
+            return key;
+        }
         if (secretKey == null || secretKey.trim().isEmpty()) {
             throw new IllegalStateException("JWT secret key is not configured (jwt.secret.key)");
         }
         try {
             byte[] keyBytes = Base64.getDecoder().decode(secretKey);
-            return Keys.hmacShaKeyFor(keyBytes);
+            key = Keys.hmacShaKeyFor(keyBytes);
         } catch (IllegalArgumentException ex) {
             throw new IllegalStateException("Invalid JWT secret key: must be a Base64-encoded key of sufficient length", ex);
         }
+        signInKey = key;
+        return key;
+    }
+
+    private static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Keeps each verified token only until its own exp (plus the allowed clock skew)
+    private class TokenExpiry implements Expiry<String, Claims> {
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            long remainingMillis = claims.getExpiration().getTime()
+                    + TimeUnit.SECONDS.toMillis(allowedClockSkewSeconds)
+                    - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,69 @@
+package com.stitch.app.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stitch.app.dto.CacheStats;
+import com.stitch.app.entity.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded, TTL-based cache of the principals rebuilt for token-authenticated requests,
+ * keyed by email (the JWT subject). Anything that changes a user's email, password or
+ * active flag must call {@link #evict(String)}; the TTL bounds staleness for other nodes.
+ * Not used for password login, which always goes to the database. Every caller gets its
+ * own copy of a cached User, so concurrent requests never share a mutable entity.
+ */
+@Component
+public class PrincipalCache {
+
+    private final UserDetailsService userDetailsService;
+    private final Cache<String, UserDetails> cache;
+
+    public PrincipalCache(UserDetailsService userDetailsService,
+                          @Value("${security.principal-cache.ttl-seconds:300}") long ttlSeconds,
+                          @Value("${security.principal-cache.max-size:10000}") long maxSize) {
+        this.userDetailsService = userDetailsService;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    // Returns the cached principal or loads it through the UserDetailsService on a miss
+    public UserDetails load(String email) {
+        return copyOf(cache.get(email, userDetailsService::loadUserByUsername));
+    }
+
+    public void evict(String email) {
+        if (email != null) {
+            cache.invalidate(email);
+        }
+    }
+
+    public CacheStats getStats() {
+        return CacheStats.from(cache);
+    }
+
+    private static UserDetails copyOf(UserDetails details) {
+        if (!(details instanceof User user)) {
+            return details;
+        }
+        return User.builder()
+                .id(user.getId())
+                .email(user.getEmail())
+                .password(user.getPassword())
+                .fullName(user.getFullName())
+                .phoneNumber(user.getPhoneNumber())
+                .role(user.getRole())
+                .isActive(user.getIsActive())
+                .createdAt(user.getCreatedAt())
+                .updatedAt(user.getUpdatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,62 @@
+package com.stitch.app.service;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Moves comma-joined inspoImageUrl values into appointment_images after startup. Each
+ * batch's files are described first, without a transaction, and a short transaction then
+ * locks the rows just for the inserts, so live traffic is never blocked for long. Edits of appointments
+ * that are not converted yet migrate them inline, so the app is fully usable meanwhile.
+ */
+@Component
+@RequiredArgsConstructor
+public class AppointmentImageMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(AppointmentImageMigrator.class);
+
+    private final AppointmentImageService appointmentImageService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${appointment.images.migration.enabled:true}")
+    private boolean enabled;
+
+    @Value("${appointment.images.migration.batch-size:20}")
+    private int batchSize;
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        long total = 0;
+        try {
+            long afterId = 0;
+            while (true) {
+                List<AppointmentImageService.LegacyImages> batch = appointmentImageService.describeLegacyBatch(afterId, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                Integer migrated = transactionTemplate.execute(status -> appointmentImageService.migrateDescribed(batch));
+                total += migrated == null ? 0 : migrated;
+                afterId = batch.get(batch.size() - 1).appointmentId();
+            }
+        } catch (Exception e) {
+            log.warn("Appointment image migration stopped after {} appointments: {}", total, e.getMessage());
+            return;
+        }
+        if (total > 0) {
+            log.info("Migrated images of {} appointments to appointment_images", total);
+        }
+    }
+}
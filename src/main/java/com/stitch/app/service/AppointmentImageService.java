@@ -0,0 +1,261 @@
+package com.stitch.app.service;
+
+import com.stitch.app.dto.AppointmentSummaryDTO;
+import com.stitch.app.dto.StoredFile;
+import com.stitch.app.entity.Appointment;
+import com.stitch.app.entity.AppointmentImage;
+import com.stitch.app.repository.AppointmentImageRepository;
+import com.stitch.app.repository.AppointmentRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Owns the appointment_images rows of an appointment. Appointments created before the
+ * table existed still carry comma-joined names in legacyInspoImageUrl; reads fall back to
+ * that column and every write converts the appointment first, so the background
+ * AppointmentImageMigrator and live edits can run side by side.
+ */
+@Service
+@RequiredArgsConstructor
+public class AppointmentImageService {
+
+    private final AppointmentImageRepository appointmentImageRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final FileStorageService fileStorageService;
+
+    /** Legacy images of one appointment, described from storage before any row is locked. */
+    public record LegacyImages(Long appointmentId, String legacyInspoImageUrl, List<StoredFile> files) {
+    }
+
+    public Optional<String> findFileNameAt(Appointment appointment, int position) {
+        if (position < 0) {
+            return Optional.empty();
+        }
+        if (hasLegacyImages(appointment)) {
+            String[] parts = appointment.getLegacyInspoImageUrl().split(",");
+            return position < parts.length ? Optional.of(parts[position]) : Optional.empty();
+        }
+        return appointmentImageRepository.findFileNameAtPosition(appointment.getId(), position);
+    }
+
+    public List<String> getFileNames(Appointment appointment) {
+        if (hasLegacyImages(appointment)) {
+            return Arrays.asList(appointment.getLegacyInspoImageUrl().split(","));
+        }
+        return appointmentImageRepository.findByAppointment_IdOrderByOrdinalAsc(appointment.getId()).stream()
+                .map(AppointmentImage::getFileName)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * File names of several appointments in display order, with one query for the whole set.
+     * Appointments without rows are absent; callers fall back to the legacy column.
+     */
+    public Map<Long, List<String>> getFileNames(Collection<Long> appointmentIds) {
+        if (appointmentIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, List<String>> names = new HashMap<>();
+        for (Object[] row : appointmentImageRepository.findFileNamesByAppointmentIds(appointmentIds)) {
+            names.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[1]);
+        }
+        return names;
+    }
+
+    // Sets inspoImageUrl and imageCount on appointments that do not carry them yet
+    public void fillImages(Collection<Appointment> appointments) {
+        List<Appointment> missing = appointments.stream()
+                .filter(appointment -> appointment.getImageCount() == null)
+                .toList();
+        Map<Long, List<String>> names = getFileNames(missing.stream()
+                .filter(appointment -> !hasLegacyImages(appointment))
+                .map(Appointment::getId)
+                .toList());
+        for (Appointment appointment : missing) {
+            List<String> fileNames = namesOf(appointment.getId(), appointment.getLegacyInspoImageUrl(), names);
+            appointment.setInspoImageUrl(fileNames.isEmpty() ? null : String.join(",", fileNames));
+            appointment.setImageCount(fileNames.size());
+        }
+    }
+
+    // Same for feed rows, which the feed query returns with the legacy column in inspoImageUrl
+    public void fillSummaryImages(List<AppointmentSummaryDTO> rows) {
+        Map<Long, List<String>> names = getFileNames(rows.stream()
+                .filter(row -> row.getInspoImageUrl() == null || row.getInspoImageUrl().isEmpty())
+                .map(AppointmentSummaryDTO::getId)
+                .toList());
+        for (AppointmentSummaryDTO row : rows) {
+            List<String> fileNames = namesOf(row.getId(), row.getInspoImageUrl(), names);
+            row.setInspoImageUrl(fileNames.isEmpty() ? null : String.join(",", fileNames));
+            row.setImageCount(fileNames.size());
+        }
+    }
+
+    private static List<String> namesOf(Long appointmentId, String legacyInspoImageUrl, Map<Long, List<String>> names) {
+        if (legacyInspoImageUrl != null && !legacyInspoImageUrl.isEmpty()) {
+            return Arrays.asList(legacyInspoImageUrl.split(","));
+        }
+        return names.getOrDefault(appointmentId, List.of());
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void addImages(Appointment appointment, List<StoredFile> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        migrateLegacy(appointment);
+        int ordinal = appointmentImageRepository.findMaxOrdinal(appointment.getId());
+        List<AppointmentImage> images = new ArrayList<>();
+        for (StoredFile file : files) {
+            images.add(toImage(appointment, ++ordinal, file));
+        }
+        appointmentImageRepository.saveAll(images);
+        refreshDerived(appointment);
+    }
+
+    // Removes the images at the given positions and returns their file names
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<String> removeAt(Appointment appointment, Collection<Integer> positions) {
+        migrateLegacy(appointment);
+        List<AppointmentImage> current = appointmentImageRepository.findByAppointment_IdOrderByOrdinalAsc(appointment.getId());
+        List<AppointmentImage> removed = positions.stream()
+                .distinct()
+                .filter(p -> p >= 0 && p < current.size())
+                .map(current::get)
+                .collect(Collectors.toList());
+        appointmentImageRepository.deleteAllInBatch(removed);
+        refreshDerived(appointment);
+        return removed.stream().map(AppointmentImage::getFileName).collect(Collectors.toList());
+    }
+
+    // Removes every image row of the appointment and returns the file names
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<String> removeAll(Appointment appointment) {
+        List<String> fileNames = getFileNames(appointment);
+        appointmentImageRepository.deleteByAppointmentId(appointment.getId());
+        appointment.setLegacyInspoImageUrl(null);
+        return fileNames;
+    }
+
+    /**
+     * Converts one legacy appointment row. Locks the appointment so the background migrator
+     * (which uses SKIP LOCKED) and a concurrent edit never convert the same row twice.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void migrateLegacy(Appointment appointment) {
+        if (!hasLegacyImages(appointment)) {
+            return;
+        }
+        Appointment locked = appointmentRepository.lockById(appointment.getId()).orElse(appointment);
+        migrateLocked(locked);
+        appointment.setLegacyInspoImageUrl(null);
+    }
+
+    /**
+     * Reads the next legacy appointments after afterId and describes their files. Runs
+     * outside any transaction: reading and hashing every file can take long (a download
+     * per file on S3), and no appointment may stay locked meanwhile.
+     */
+    @Transactional(propagation = Propagation.NEVER)
+    public List<LegacyImages> describeLegacyBatch(long afterId, int limit) {
+        List<Long> ids = appointmentRepository.findLegacyImageBatch(afterId, limit);
+        List<LegacyImages> batch = new ArrayList<>();
+        for (Appointment appointment : appointmentRepository.findAllById(ids)) {
+            if (hasLegacyImages(appointment)) {
+                batch.add(new LegacyImages(appointment.getId(), appointment.getLegacyInspoImageUrl(),
+                        describe(appointment.getLegacyInspoImageUrl())));
+            }
+        }
+        batch.sort(Comparator.comparing(LegacyImages::appointmentId));
+        return batch;
+    }
+
+    /**
+     * Converts a described batch and returns how many appointments were converted. Only
+     * the inserts run under the row locks; appointments being edited are skipped (the edit
+     * converts them), and ones whose names changed since they were described are left for
+     * the next run.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int migrateDescribed(List<LegacyImages> batch) {
+        Map<Long, LegacyImages> described = batch.stream()
+                .collect(Collectors.toMap(LegacyImages::appointmentId, Function.identity()));
+        List<Long> locked = appointmentRepository.lockLegacyImages(described.keySet());
+        int migrated = 0;
+        for (Appointment appointment : appointmentRepository.findAllById(locked)) {
+            LegacyImages images = described.get(appointment.getId());
+            if (images.legacyInspoImageUrl().equals(appointment.getLegacyInspoImageUrl())) {
+                convert(appointment, images.files());
+                migrated++;
+            }
+        }
+        return migrated;
+    }
+
+    private void migrateLocked(Appointment appointment) {
+        if (hasLegacyImages(appointment)) {
+            convert(appointment, describe(appointment.getLegacyInspoImageUrl()));
+        }
+    }
+
+    private List<StoredFile> describe(String legacyInspoImageUrl) {
+        List<StoredFile> files = new ArrayList<>();
+        for (String name : legacyInspoImageUrl.split(",")) {
+            if (!name.isBlank()) {
+                files.add(fileStorageService.describe(name.trim()));
+            }
+        }
+        return files;
+    }
+
+    private void convert(Appointment appointment, List<StoredFile> files) {
+        int ordinal = appointmentImageRepository.findMaxOrdinal(appointment.getId());
+        if (ordinal >= 0) {
+            // Converted by someone else since this instance was loaded; rows and column never coexist
+            appointment.setLegacyInspoImageUrl(null);
+            return;
+        }
+        List<AppointmentImage> images = new ArrayList<>();
+        for (StoredFile file : files) {
+            images.add(toImage(appointment, ++ordinal, file));
+        }
+        appointmentImageRepository.saveAll(images);
+        appointment.setLegacyInspoImageUrl(null);
+        appointmentRepository.save(appointment);
+    }
+
+    private AppointmentImage toImage(Appointment appointment, int ordinal, StoredFile file) {
+        return AppointmentImage.builder()
+                .appointment(appointment)
+                .ordinal(ordinal)
+                .fileName(file.getFileName())
+                .size(file.getSha256() != null ? file.getSize() : null)
+                .contentType(file.getContentType())
+                .sha256(file.getSha256())
+                .build();
+    }
+
+    // Keeps the returned entity consistent with the rows it just changed
+    private void refreshDerived(Appointment appointment) {
+        List<String> names = getFileNames(appointment);
+        appointment.setInspoImageUrl(names.isEmpty() ? null : String.join(",", names));
+        appointment.setImageCount(names.size());
+    }
+
+    private static boolean hasLegacyImages(Appointment appointment) {
+        return appointment.getLegacyInspoImageUrl() != null && !appointment.getLegacyInspoImageUrl().isEmpty();
+    }
+}
@@ -1,68 +1,88 @@
 package com.stitch.app.service;
 
 import com.stitch.app.dto.AppointmentDTO;
+import com.stitch.app.dto.AppointmentFeedFilter;
+import com.stitch.app.dto.AppointmentSummaryDTO;
+import com.stitch.app.dto.CursorPage;
+import com.stitch.app.dto.KeysetCursor;
+import com.stitch.app.dto.StoredFile;
 import com.stitch.app.entity.Appointment;
 import com.stitch.app.entity.Notification;
 import com.stitch.app.entity.User;
 import com.stitch.app.repository.AppointmentRepository;
-import com.stitch.app.repository.NotificationRepository;
-import com.stitch.app.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class AppointmentService {
 
+    private static final Logger log = LoggerFactory.getLogger(AppointmentService.class);
+
     private final AppointmentRepository appointmentRepository;
-    private final UserRepository userRepository;
-    private final NotificationRepository notificationRepository;
     private final NotificationService notificationService;
+    private final NotificationOutboxService notificationOutboxService;
     private final FileStorageService fileStorageService;
+    private final AppointmentImageService appointmentImageService;
+    private final ImageIngestionService imageIngestionService;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final int MAX_FEED_PAGE_SIZE = 100;
 
-    @Transactional
     public Appointment createAppointment(AppointmentDTO dto, MultipartFile[] images, User customer) {
-        String imageUrl = null;
-
-        // Upload images if provided
-        if (images != null && images.length > 0) {
-            List<String> stored = new ArrayList<>();
-            for (MultipartFile img : images) {
-                if (img != null && !img.isEmpty()) {
-                    stored.add(fileStorageService.storeFile(img));
-                }
-            }
-            if (!stored.isEmpty()) {
-                // store as comma-separated filenames
-                imageUrl = String.join(",", stored);
-            }
-        }
+        // Images are validated and written before the transaction opens, so it only covers the inserts
+        List<StoredFile> stored = imageIngestionService.ingest(images);
 
-        Appointment appointment = Appointment.builder()
-                .customer(customer)
-                .customerName(dto.getCustomerName())
-                .age(dto.getAge())
-                .phoneNumber(dto.getPhoneNumber())
-                .deadline(dto.getDeadline())
-                .inspoImageUrl(imageUrl)
-                .status(Appointment.Status.PENDING)
-                .notes(dto.getNotes())
-                .build();
+        try {
+            return transactionTemplate.execute(status -> {
+                Appointment appointment = Appointment.builder()
+                        .customer(customer)
+                        .customerName(dto.getCustomerName())
+                        .age(dto.getAge())
+                        .phoneNumber(dto.getPhoneNumber())
+                        .deadline(dto.getDeadline())
+                        .status(Appointment.Status.PENDING)
+                        .notes(dto.getNotes())
+                        .build();
+
+                appointment = appointmentRepository.save(appointment);
+                appointmentImageService.addImages(appointment, stored);
+
+                // Notify all admins
+                notifyAdmins(appointment);
+
+                return appointment;
+            });
+        } catch (RuntimeException e) {
+            imageIngestionService.discard(stored);
+            throw e;
+        }
+    }
 
-        appointment = appointmentRepository.save(appointment);
+    // Image names are not loaded with the entity; call these on appointments that go into a response
+    public Appointment withImages(Appointment appointment) {
+        appointmentImageService.fillImages(List.of(appointment));
+        return appointment;
+    }
 
-        // Notify all admins
-        notifyAdmins(appointment);
+    public List<Appointment> withImages(List<Appointment> appointments) {
+        appointmentImageService.fillImages(appointments);
+        return appointments;
+    }
 
-        return appointment;
+    public Optional<String> getImageFileName(Appointment appointment, int index) {
+        return appointmentImageService.findFileNameAt(appointment, index);
     }
 
     public List<Appointment> getAppointmentsByCustomer(Long customerId) {
@@ -74,15 +94,39 @@ public class AppointmentService {
                 .orElseThrow(() -> new RuntimeException("Appointment not found"));
     }
 
-    @Transactional
     public Appointment updateAppointmentByCustomer(Long appointmentId, AppointmentDTO dto, MultipartFile[] images, String deleteIndices, Long customerId) {
-        // Verify the appointment belongs to the customer
-        Appointment appointment = getAppointmentByIdAndCustomer(appointmentId, customerId);
+        // Reject before writing any file; checked again inside the transaction
+        requirePendingForUpdate(getAppointmentByIdAndCustomer(appointmentId, customerId));
 
-        // Only allow updates if appointment is PENDING
+        List<StoredFile> stored = imageIngestionService.ingest(images);
+        List<String> removedFiles = new ArrayList<>();
+        Appointment updated;
+        try {
+            updated = transactionTemplate.execute(status ->
+                    applyCustomerUpdate(appointmentId, dto, stored, deleteIndices, customerId, removedFiles));
+        } catch (RuntimeException e) {
+            imageIngestionService.discard(stored);
+            throw e;
+        }
+
+        // Files of removed images go only once their rows are gone for good
+        deleteImageFiles(removedFiles);
+        return updated;
+    }
+
+    private void requirePendingForUpdate(Appointment appointment) {
         if (appointment.getStatus() != Appointment.Status.PENDING) {
             throw new RuntimeException("Cannot update appointment that is not in PENDING status");
         }
+    }
+
+    private Appointment applyCustomerUpdate(Long appointmentId, AppointmentDTO dto, List<StoredFile> stored,
+                                            String deleteIndices, Long customerId, List<String> removedFiles) {
+        // Verify the appointment belongs to the customer
+        Appointment appointment = getAppointmentByIdAndCustomer(appointmentId, customerId);
+
+        // Only allow updates if appointment is PENDING
+        requirePendingForUpdate(appointment);
 
         // Update fields
         if (dto.getCustomerName() != null) {
@@ -103,54 +147,18 @@ public class AppointmentService {
 
         // Handle image deletions FIRST
         if (deleteIndices != null && !deleteIndices.isEmpty()) {
-            String existing = appointment.getInspoImageUrl();
-            if (existing != null && !existing.isEmpty()) {
-                String[] files = existing.split(",");
-
-                List<Integer> toDelete = Arrays.stream(deleteIndices.split(","))
-                        .map(String::trim)
-                        .filter(s -> !s.isEmpty())
-                        .map(Integer::parseInt)
-                        .filter(i -> i >= 0)
-                        .sorted(Comparator.reverseOrder()) // Delete from highest index first
-                        .collect(Collectors.toList());
-
-                List<String> remaining = new ArrayList<>(Arrays.asList(files));
-                for (int idx : toDelete) {
-                    if (idx >= 0 && idx < remaining.size()) {
-                        // Delete the physical file
-                        try {
-                            fileStorageService.deleteFile(remaining.get(idx));
-                        } catch (Exception e) {
-                            System.err.println("Warning: Could not delete file: " + e.getMessage());
-                        }
-                        remaining.remove(idx);
-                    }
-                }
-
-                // Update with remaining images
-                appointment.setInspoImageUrl(remaining.isEmpty() ? null : String.join(",", remaining));
-            }
+            List<Integer> toDelete = Arrays.stream(deleteIndices.split(","))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .map(Integer::parseInt)
+                    .collect(Collectors.toList());
+
+            // Positions refer to the image order before this update
+            removedFiles.addAll(appointmentImageService.removeAt(appointment, toDelete));
         }
 
         // Then append new images if provided
-        if (images != null && images.length > 0) {
-            List<String> stored = new ArrayList<>();
-            for (MultipartFile img : images) {
-                if (img != null && !img.isEmpty()) {
-                    stored.add(fileStorageService.storeFile(img));
-                }
-            }
-            if (!stored.isEmpty()) {
-                String existing = appointment.getInspoImageUrl();
-                String appended = String.join(",", stored);
-                if (existing != null && !existing.isEmpty()) {
-                    appointment.setInspoImageUrl(existing + "," + appended);
-                } else {
-                    appointment.setInspoImageUrl(appended);
-                }
-            }
-        }
+        appointmentImageService.addImages(appointment, stored);
 
         appointment = appointmentRepository.save(appointment);
 
@@ -161,55 +169,59 @@ public class AppointmentService {
     }
 
     private void notifyAdminsAboutAppointmentUpdate(Appointment appointment) {
-        List<User> admins = userRepository.findByRole(User.Role.ADMIN);
-
-        for (User admin : admins) {
-            notificationService.createNotification(
-                    admin,
-                    appointment,
-                    "Appointment Updated",
-                    appointment.getCustomerName() + " has updated their appointment",
-                    Notification.NotificationType.APPOINTMENT_BOOKED
-            );
-        }
+        notificationOutboxService.enqueueForRole(
+                User.Role.ADMIN,
+                appointment.getId(),
+                "Appointment Updated",
+                appointment.getCustomerName() + " has updated their appointment",
+                Notification.NotificationType.APPOINTMENT_BOOKED
+        );
     }
 
-    @Transactional
     public void deleteAppointmentByCustomer(Long appointmentId, Long customerId) {
-        // Verify the appointment belongs to the customer
-        Appointment appointment = getAppointmentByIdAndCustomer(appointmentId, customerId);
+        List<String> removedFiles = transactionTemplate.execute(status -> {
+            // Verify the appointment belongs to the customer
+            Appointment appointment = getAppointmentByIdAndCustomer(appointmentId, customerId);
 
-        // Only allow deletion if appointment is PENDING
-        if (appointment.getStatus() != Appointment.Status.PENDING) {
-            throw new RuntimeException("Cannot delete appointment that is not in PENDING status");
-        }
+            // Only allow deletion if appointment is PENDING
+            if (appointment.getStatus() != Appointment.Status.PENDING) {
+                throw new RuntimeException("Cannot delete appointment that is not in PENDING status");
+            }
+
+            List<String> fileNames = appointmentImageService.removeAll(appointment);
 
-        // Delete associated images if exists (don't fail if image deletion fails)
-        if (appointment.getInspoImageUrl() != null && !appointment.getInspoImageUrl().isEmpty()) {
+            // Delete related notifications first (to avoid foreign key constraint violation)
             try {
-                String[] files = appointment.getInspoImageUrl().split(",");
-                for (String f : files) {
-                    fileStorageService.deleteFile(f);
-                }
+                notificationService.deleteForAppointment(appointmentId);
             } catch (Exception e) {
-                // Log but continue with appointment deletion
-                System.err.println("Warning: Could not delete image files for appointment " + appointmentId + ": " + e.getMessage());
+                System.err.println("Warning: Could not delete notifications for appointment " + appointmentId + ": " + e.getMessage());
             }
-        }
+            // Undelivered ones too, otherwise the relay would insert them against a deleted appointment
+            notificationOutboxService.discardForAppointment(appointmentId);
 
-        // Delete related notifications first (to avoid foreign key constraint violation)
-        try {
-            notificationRepository.deleteByAppointmentId(appointmentId);
-        } catch (Exception e) {
-            System.err.println("Warning: Could not delete notifications for appointment " + appointmentId + ": " + e.getMessage());
-        }
+            // Delete the appointment from database
+            appointmentRepository.deleteById(appointmentId);
+            return fileNames;
+        });
 
-        // Delete the appointment from database
-        appointmentRepository.deleteById(appointmentId);
+        // Image files go only once the rows are gone for good (don't fail if image deletion fails)
+        deleteImageFiles(removedFiles);
     }
 
-    public List<Appointment> getAllAppointments() {
-        return appointmentRepository.findAllByOrderByCreatedAtDesc();
+    public CursorPage<AppointmentSummaryDTO> getAppointmentFeed(AppointmentFeedFilter filter, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_FEED_PAGE_SIZE));
+
+        // Fetch one extra row to know whether another page exists without a COUNT query
+        List<AppointmentSummaryDTO> rows = appointmentRepository.findFeedPage(filter, KeysetCursor.decode(cursor), pageSize + 1);
+        if (rows.size() <= pageSize) {
+            appointmentImageService.fillSummaryImages(rows);
+            return CursorPage.of(rows, null);
+        }
+
+        List<AppointmentSummaryDTO> page = rows.subList(0, pageSize);
+        appointmentImageService.fillSummaryImages(page);
+        AppointmentSummaryDTO last = page.get(pageSize - 1);
+        return CursorPage.of(page, new KeysetCursor(last.getCreatedAt(), last.getId()).encode());
     }
 
     public Appointment getAppointmentById(Long id) {
@@ -224,9 +236,9 @@ public class AppointmentService {
         appointment = appointmentRepository.save(appointment);
 
         // Notify customer
-        notificationService.createNotification(
-                appointment.getCustomer(),
-                appointment,
+        notificationOutboxService.enqueueForUser(
+                appointment.getCustomerId(),
+                appointment.getId(),
                 "Appointment Approved",
                 "Your appointment has been approved. Our admin will contact you through a call within 2 days to confirm your appointment details. You will need to visit our physical location and give measurements.",
                 Notification.NotificationType.APPOINTMENT_APPROVED
@@ -243,9 +255,9 @@ public class AppointmentService {
         appointment = appointmentRepository.save(appointment);
 
         // Notify customer
-        notificationService.createNotification(
-                appointment.getCustomer(),
-                appointment,
+        notificationOutboxService.enqueueForUser(
+                appointment.getCustomerId(),
+                appointment.getId(),
                 "Appointment Declined",
                 "Your appointment has been declined. Reason: " + reason,
                 Notification.NotificationType.APPOINTMENT_DECLINED
@@ -266,18 +278,18 @@ public class AppointmentService {
 
             // Send notification based on status
             if (status == Appointment.Status.COMPLETED) {
-                notificationService.createNotification(
-                        appointment.getCustomer(),
-                        appointment,
+                notificationOutboxService.enqueueForUser(
+                        appointment.getCustomerId(),
+                        appointment.getId(),
                         "Jacket Ready",
                         "Your saree jacket is ready! Please come to collect it.",
                         Notification.NotificationType.JACKET_READY
                 );
             } else if (oldStatus != status) {
                 // Notify customer about any status change
-                notificationService.createNotification(
-                        appointment.getCustomer(),
-                        appointment,
+                notificationOutboxService.enqueueForUser(
+                        appointment.getCustomerId(),
+                        appointment.getId(),
                         "Appointment Status Updated",
                         "Your appointment status has been updated to: " + status.toString().replace("_", " "),
                         Notification.NotificationType.APPOINTMENT_STATUS_CHANGED
@@ -290,47 +302,46 @@ public class AppointmentService {
         }
     }
 
-    @Transactional
     public void deleteAppointment(Long id) {
-        // Delete related notifications first (to avoid foreign key constraint violation)
-        try {
-            notificationRepository.deleteByAppointmentId(id);
-        } catch (Exception e) {
-            System.err.println("Warning: Could not delete notifications for appointment " + id + ": " + e.getMessage());
-        }
+        List<String> removedFiles = transactionTemplate.execute(status -> {
+            // Delete related notifications first (to avoid foreign key constraint violation)
+            try {
+                notificationService.deleteForAppointment(id);
+            } catch (Exception e) {
+                System.err.println("Warning: Could not delete notifications for appointment " + id + ": " + e.getMessage());
+            }
+            notificationOutboxService.discardForAppointment(id);
 
-        // Delete stored image files if any
-        try {
-            Appointment appointment = getAppointmentById(id);
-            if (appointment.getInspoImageUrl() != null && !appointment.getInspoImageUrl().isEmpty()) {
-                String[] files = appointment.getInspoImageUrl().split(",");
-                for (String f : files) {
-                    try {
-                        fileStorageService.deleteFile(f);
-                    } catch (Exception ex) {
-                        System.err.println("Warning: Could not delete image file " + f + ": " + ex.getMessage());
-                    }
-                }
+            List<String> fileNames = appointmentRepository.findById(id)
+                    .map(appointmentImageService::removeAll)
+                    .orElse(List.of());
+
+            appointmentRepository.deleteById(id);
+            return fileNames;
+        });
+
+        // Stored image files go only once the rows are gone for good
+        deleteImageFiles(removedFiles);
+    }
+
+    private void deleteImageFiles(List<String> fileNames) {
+        for (String f : fileNames) {
+            try {
+                fileStorageService.deleteFile(f);
+            } catch (Exception ex) {
+                log.warn("Could not delete image file {}: {}", f, ex.getMessage());
             }
-        } catch (Exception e) {
-            // ignore
         }
-
-        appointmentRepository.deleteById(id);
     }
 
     private void notifyAdmins(Appointment appointment) {
-        List<User> admins = userRepository.findByRole(User.Role.ADMIN);
-
-        for (User admin : admins) {
-            notificationService.createNotification(
-                    admin,
-                    appointment,
-                    "New Appointment",
-                    "New appointment request from " + appointment.getCustomerName(),
-                    Notification.NotificationType.APPOINTMENT_BOOKED
-            );
-        }
+        notificationOutboxService.enqueueForRole(
+                User.Role.ADMIN,
+                appointment.getId(),
+                "New Appointment",
+                "New appointment request from " + appointment.getCustomerName(),
+                Notification.NotificationType.APPOINTMENT_BOOKED
+        );
     }
 
     // --- New bill related methods ---
@@ -360,9 +371,9 @@ public class AppointmentService {
         appointment = appointmentRepository.save(appointment);
 
         // Notify customer about bill upload
-        notificationService.createNotification(
-                appointment.getCustomer(),
-                appointment,
+        notificationOutboxService.enqueueForUser(
+                appointment.getCustomerId(),
+                appointment.getId(),
                 "Bill Uploaded",
                 "A bill has been uploaded for your appointment.",
                 Notification.NotificationType.PAYMENT_REMINDER
@@ -416,9 +427,9 @@ public class AppointmentService {
         appointment = appointmentRepository.save(appointment);
 
         // Notify customer about measurements upload
-        notificationService.createNotification(
-                appointment.getCustomer(),
-                appointment,
+        notificationOutboxService.enqueueForUser(
+                appointment.getCustomerId(),
+                appointment.getId(),
                 "Measurements Uploaded",
                 "Measurements file has been uploaded for your appointment.",
                 Notification.NotificationType.MEASUREMENT_REMINDER
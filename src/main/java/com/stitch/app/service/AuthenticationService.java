@@ -14,8 +14,6 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-
 @Service
 @RequiredArgsConstructor
 public class AuthenticationService {
@@ -24,7 +22,7 @@ public class AuthenticationService {
     private final PasswordEncoder passwordEncoder;
     private final JwtService jwtService;
     private final AuthenticationManager authenticationManager;
-    private final NotificationService notificationService;
+    private final NotificationFanoutService notificationFanoutService;
 
     public AuthenticationResponse register(RegisterRequest request) {
         // Check if email already exists
@@ -59,33 +57,25 @@ public class AuthenticationService {
     }
 
     private void notifyAdminsAboutNewCustomer(User customer) {
-        List<User> admins = userRepository.findByRole(User.Role.ADMIN);
-
-        for (User admin : admins) {
-            notificationService.createNotification(
-                    admin,
-                    "New Customer Registered",
-                    "New customer " + customer.getFullName() + " has registered with email: " + customer.getEmail(),
-                    Notification.NotificationType.CUSTOMER_REGISTERED
-            );
-        }
+        notificationFanoutService.notifyRole(
+                User.Role.ADMIN,
+                "New Customer Registered",
+                "New customer " + customer.getFullName() + " has registered with email: " + customer.getEmail(),
+                Notification.NotificationType.CUSTOMER_REGISTERED
+        );
     }
 
     private void checkAndNotifyCustomerMilestone() {
-        long customerCount = userRepository.findByRole(User.Role.CUSTOMER).size();
+        long customerCount = userRepository.countByRole(User.Role.CUSTOMER);
 
         // Check if it's a milestone (100, 200, 300, etc.)
         if (customerCount % 100 == 0) {
-            List<User> admins = userRepository.findByRole(User.Role.ADMIN);
-
-            for (User admin : admins) {
-                notificationService.createNotification(
-                        admin,
-                        "Customer Milestone Reached!",
-                        "Congratulations! You have reached " + customerCount + " customers!",
-                        Notification.NotificationType.CUSTOMER_MILESTONE
-                );
-            }
+            notificationFanoutService.notifyRole(
+                    User.Role.ADMIN,
+                    "Customer Milestone Reached!",
+                    "Congratulations! You have reached " + customerCount + " customers!",
+                    Notification.NotificationType.CUSTOMER_MILESTONE
+            );
         }
     }
 
@@ -0,0 +1,38 @@
+package com.stitch.app.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Where stored upload files live. Names are the flat stored file names FileStorageService
+ * hands out; how they are laid out (directories, object keys) is up to the store.
+ */
+public interface BlobStore {
+
+    /**
+     * Stores the content of source under the given name, replacing any existing blob. The
+     * source file is consumed: moved into place by a local store, uploaded and deleted by a
+     * remote one.
+     */
+    void put(String name, Path source, String contentType) throws IOException;
+
+    boolean exists(String name);
+
+    // Returns false when there was nothing to delete
+    boolean delete(String name) throws IOException;
+
+    // Throws NoSuchFileException when there is no blob of that name
+    InputStream open(String name) throws IOException;
+
+    // The file backing the blob, for stores on the local filesystem; empty for remote stores
+    Optional<Path> localPath(String name);
+
+    // A time-limited URL clients can download the blob from directly; empty if unsupported
+    default Optional<URI> presignedGetUrl(String name, Duration ttl, String contentType, String contentDisposition) {
+        return Optional.empty();
+    }
+}
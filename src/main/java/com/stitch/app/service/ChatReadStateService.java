@@ -0,0 +1,198 @@
+package com.stitch.app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stitch.app.dto.ChatReadReceipt;
+import com.stitch.app.dto.ChatTypingEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read receipts and typing indicators from STOMP, kept in memory. Receipts are coalesced
+ * into one high-water mark per (reader, peer) and flushed every flush-interval-ms: one
+ * UPDATE marks the conversation's messages read up to the mark and the unread counters
+ * drop by the rows it marked. messages.is_read stays the only read state, so history,
+ * reconnects and the REST mark-read all see the same thing. Receipts at or below the
+ * newest message already marked cost nothing. Typing events are forwarded to the other
+ * user, at most once per typing-throttle-ms per conversation, and never stored.
+ */
+@Service
+public class ChatReadStateService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatReadStateService.class);
+
+    public static final String READ_RECEIPTS_DESTINATION = "/queue/read-receipts";
+    public static final String TYPING_DESTINATION = "/queue/typing";
+
+    // Reports how many messages the receipt marked and the newest of them, in the same statement
+    private static final String MARK_READ_SQL =
+            "WITH marked AS (UPDATE messages SET is_read = true " +
+            "WHERE sender_id = ? AND receiver_id = ? AND id <= ? AND is_read = false RETURNING id) " +
+            "SELECT count(*), max(id) FROM marked";
+
+    private record ChatPair(Long readerId, Long peerId) {
+    }
+
+    record MarkedRead(long count, Long newestId) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final UnreadCounterService unreadCounterService;
+    private final long typingThrottleNanos;
+
+    // Receipts not flushed yet, and the newest message each flush marked; both only ever grow per pair
+    private final Map<ChatPair, Long> pendingMarks = new ConcurrentHashMap<>();
+    private final Cache<ChatPair, Long> storedMarks;
+    // When "typing" was last forwarded for a (typist, receiver) pair
+    private final Cache<ChatPair, Long> typingForwardedAt;
+
+    public ChatReadStateService(JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                SimpMessagingTemplate messagingTemplate,
+                                UnreadCounterService unreadCounterService,
+                                @Value("${messages.read-state.typing-throttle-ms:2000}") long typingThrottleMs,
+                                @Value("${messages.read-state.cache.max-size:50000}") long maxSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.messagingTemplate = messagingTemplate;
+        this.unreadCounterService = unreadCounterService;
+        this.typingThrottleNanos = Duration.ofMillis(typingThrottleMs).toNanos();
+        this.storedMarks = Caffeine.newBuilder().maximumSize(maxSize).build();
+        this.typingForwardedAt = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(typingThrottleMs).multipliedBy(5))
+                .build();
+    }
+
+    /**
+     * Records that the reader has seen the peer's messages up to upToMessageId. The peer is
+     * told once the flush has marked them, with the newest message actually marked, so a
+     * receipt for ids that do not exist (yet) never reaches it.
+     */
+    public void markRead(Long readerId, Long peerId, Long upToMessageId) {
+        if (peerId == null || upToMessageId == null || upToMessageId <= 0 || peerId.equals(readerId)) {
+            throw new RuntimeException("peerId and upToMessageId are required");
+        }
+        ChatPair pair = new ChatPair(readerId, peerId);
+        Long stored = storedMarks.getIfPresent(pair);
+        if (stored != null && upToMessageId <= stored) {
+            return;
+        }
+        pendingMarks.merge(pair, upToMessageId, Math::max);
+    }
+
+    public void typing(Long typistId, Long receiverId, boolean typing) {
+        if (receiverId == null || receiverId.equals(typistId)) {
+            throw new RuntimeException("receiverId is required");
+        }
+        ChatPair pair = new ChatPair(typistId, receiverId);
+        if (typing) {
+            long now = System.nanoTime();
+            Long last = typingForwardedAt.getIfPresent(pair);
+            if (last != null && now - last < typingThrottleNanos) {
+                return;
+            }
+            typingForwardedAt.put(pair, now);
+        } else if (typingForwardedAt.asMap().remove(pair) == null) {
+            // The receiver was never told this user is typing
+            return;
+        }
+        messagingTemplate.convertAndSendToUser(receiverId.toString(), TYPING_DESTINATION,
+                new ChatTypingEvent(typistId, typing));
+    }
+
+    /**
+     * Writes the coalesced marks, one transaction per flush. Marks that fail are put back
+     * and go out with the next flush.
+     */
+    @Scheduled(initialDelayString = "${messages.read-state.flush-interval-ms:1000}",
+            fixedDelayString = "${messages.read-state.flush-interval-ms:1000}")
+    public void flush() {
+        if (pendingMarks.isEmpty()) {
+            return;
+        }
+        // Sorted, and counters moved once for the whole batch: see UnreadCounterService.adjustMessages(Map)
+        Map<ChatPair, Long> batch = new TreeMap<>(Comparator.comparing(ChatPair::readerId).thenComparing(ChatPair::peerId));
+        for (ChatPair pair : pendingMarks.keySet()) {
+            Long upTo = pendingMarks.remove(pair);
+            if (upTo != null) {
+                batch.put(pair, upTo);
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<Long, Map<Long, Long>> deltas = new HashMap<>();
+                batch.forEach((pair, upTo) -> deltas.computeIfAbsent(pair.readerId(), readerId -> new HashMap<>())
+                        .put(pair.peerId(), -write(pair, upTo)));
+                unreadCounterService.adjustMessages(deltas);
+            });
+        } catch (RuntimeException e) {
+            batch.forEach((pair, upTo) -> pendingMarks.merge(pair, upTo, Math::max));
+            log.warn("Failed to flush {} read mark(s), retrying with the next flush: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    // Returns how many messages this marked read
+    private long write(ChatPair pair, Long upTo) {
+        MarkedRead marked = jdbcTemplate.queryForObject(MARK_READ_SQL,
+                (rs, rowNum) -> new MarkedRead(rs.getLong(1), rs.getObject(2, Long.class)),
+                pair.peerId(), pair.readerId(), upTo);
+        if (marked == null || marked.count() == 0) {
+            return 0;
+        }
+        afterCommit(() -> {
+            // Only the flush that moved the mark furthest tells the peer
+            Long stored = storedMarks.asMap().merge(pair, marked.newestId(), Math::max);
+            if (stored.equals(marked.newestId())) {
+                pushReceipt(pair, stored);
+            }
+        });
+        return marked.count();
+    }
+
+    private void pushReceipt(ChatPair pair, Long upToMessageId) {
+        try {
+            messagingTemplate.convertAndSendToUser(pair.peerId().toString(), READ_RECEIPTS_DESTINATION,
+                    new ChatReadReceipt(pair.readerId(), upToMessageId));
+        } catch (RuntimeException e) {
+            // The messages are marked read either way; the peer sees it on its next history load
+            log.warn("Failed to push read receipt of user {} to user {}: {}", pair.readerId(), pair.peerId(), e.getMessage());
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
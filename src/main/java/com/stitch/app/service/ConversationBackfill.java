@@ -0,0 +1,55 @@
+package com.stitch.app.service;
+
+import com.stitch.app.repository.ConversationRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Fills conversations from existing messages once, on the first start with the table
+ * (decided before traffic is accepted, so rows written by live sends do not hide an
+ * unfilled table). Idempotent, and safe next to live traffic: both paths only ever move a
+ * conversation forward to a newer message.
+ */
+@Component
+@RequiredArgsConstructor
+public class ConversationBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationBackfill.class);
+
+    private final ConversationRepository conversationRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${messages.conversations.backfill.enabled:true}")
+    private boolean enabled;
+
+    private boolean needed;
+
+    @PostConstruct
+    public void checkNeeded() {
+        needed = enabled && !conversationRepository.existsAny();
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!needed) {
+            return;
+        }
+        try {
+            Integer updated = transactionTemplate.execute(status -> conversationRepository.backfillFromMessages());
+            if (updated != null && updated > 0) {
+                log.info("Backfilled {} conversation(s) from messages", updated);
+            }
+        } catch (Exception e) {
+            log.warn("Conversation backfill failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.stitch.app.service;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Moves files left in the flat upload directory into the sharded layout after startup.
+ * Each file is renamed atomically and LocalBlobStore.resolve checks both places, so
+ * files stay reachable throughout. A rename replaces an existing target on Linux, so a
+ * file already in its shard is never moved over: an identical flat copy is dropped, a
+ * different one is left where it is. Pauses between batches keep the disk free for requests.
+ */
+@Component
+@RequiredArgsConstructor
+public class FileLayoutMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(FileLayoutMigrator.class);
+
+    enum Outcome {
+        MOVED,
+        DUPLICATE_REMOVED,
+        CONFLICT,
+        GONE
+    }
+
+    private final BlobStore blobStore;
+
+    @Value("${file.storage.migration.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.storage.migration.batch-size:500}")
+    private int batchSize;
+
+    @Value("${file.storage.migration.pause-ms:100}")
+    private long pauseMillis;
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (!enabled || !(blobStore instanceof LocalBlobStore localStore) || !localStore.isSharded()) {
+            return;
+        }
+        long moved = 0;
+        long duplicates = 0;
+        long skipped = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(localStore.getRoot())) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                // Hidden entries are temp files and the GC quarantine, not uploads
+                if (name.startsWith(".") || !Files.isRegularFile(file)) {
+                    continue;
+                }
+                switch (migrateFile(localStore, file)) {
+                    case MOVED -> moved++;
+                    case DUPLICATE_REMOVED -> duplicates++;
+                    case CONFLICT -> {
+                        skipped++;
+                        log.warn("Not migrating {}: a different file of that name already exists in its shard", name);
+                    }
+                    case GONE -> {
+                        // Deleted meanwhile
+                    }
+                }
+                if (moved > 0 && moved % batchSize == 0) {
+                    Thread.sleep(pauseMillis);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Upload layout migration stopped after {} files: {}", moved, e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (moved > 0 || duplicates > 0 || skipped > 0) {
+            log.info("Moved {} upload files into the sharded layout ({} duplicates removed, {} skipped)",
+                    moved, duplicates, skipped);
+        }
+    }
+
+    // Upload names are random UUIDs, so nothing else creates the target between the check and the move
+    static Outcome migrateFile(LocalBlobStore localStore, Path file) throws IOException {
+        Path target = localStore.storagePath(file.getFileName().toString());
+        try {
+            if (Files.exists(target)) {
+                if (Files.mismatch(file, target) != -1L) {
+                    return Outcome.CONFLICT;
+                }
+                Files.delete(file);
+                return Outcome.DUPLICATE_REMOVED;
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            return Outcome.MOVED;
+        } catch (NoSuchFileException e) {
+            return Outcome.GONE;
+        }
+    }
+}
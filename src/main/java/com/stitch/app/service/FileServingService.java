@@ -0,0 +1,299 @@
+package com.stitch.app.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Serves stored upload files with the HTTP caching and partial-content semantics browsers
+ * expect: strong ETag and Last-Modified validators (304 on a match), a single byte range
+ * (206 / 416, honouring If-Range), and zero-copy transfer through Tomcat's sendfile when
+ * the connector offers it, falling back to FileChannel.transferTo. Files in a remote
+ * BlobStore are answered with a redirect to a pre-signed URL instead.
+ * <p>
+ * Stored file names are random and files are never rewritten in place, so the validators
+ * come from the name and size alone.
+ */
+@Service
+public class FileServingService {
+
+    private static final Logger log = LoggerFactory.getLogger(FileServingService.class);
+
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    public enum CachePolicy {
+        // URL can point at a different file later (bill replaced, image removed): always revalidate
+        PRIVATE,
+        // URL contains the immutable stored file name
+        PUBLIC_IMMUTABLE
+    }
+
+    record ByteRange(long start, long end) {
+        static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+        long length() {
+            return end - start + 1;
+        }
+    }
+
+    private final FileStorageService fileStorageService;
+    private final long publicMaxAgeSeconds;
+    private final long sendfileMinBytes;
+    private final Duration presignedUrlTtl;
+
+    public FileServingService(FileStorageService fileStorageService,
+                              @Value("${file.serving.public-max-age-seconds:31536000}") long publicMaxAgeSeconds,
+                              @Value("${file.serving.sendfile-min-bytes:49152}") long sendfileMinBytes,
+                              @Value("${file.serving.presigned-url-ttl-seconds:300}") long presignedUrlTtlSeconds) {
+        this.fileStorageService = fileStorageService;
+        this.publicMaxAgeSeconds = publicMaxAgeSeconds;
+        this.sendfileMinBytes = sendfileMinBytes;
+        this.presignedUrlTtl = Duration.ofSeconds(presignedUrlTtlSeconds);
+    }
+
+    // Serves the requested image variant when it exists, otherwise the original
+    public void serve(String fileName, ImageVariantService.Variant variant, CachePolicy cachePolicy,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (variant != null && isSafeName(fileName)) {
+            String variantName = fileStorageService.resolveVariant(fileName, variant);
+            if (variantName.equals(fileName)) {
+                // Fallback to the original: the variant may still appear, so the URL must be revalidated
+                cachePolicy = CachePolicy.PRIVATE;
+            }
+            fileName = variantName;
+        }
+        serve(fileName, cachePolicy, request, response);
+    }
+
+    public void serve(String fileName, CachePolicy cachePolicy,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!isSafeName(fileName)) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Optional<Path> localPath = fileStorageService.localPath(fileName);
+        if (localPath.isEmpty()) {
+            redirectToStore(fileName, response);
+            return;
+        }
+        Path filePath = localPath.get();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!attributes.isRegularFile()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long size = attributes.size();
+        // HTTP dates have second precision
+        long lastModified = attributes.lastModifiedTime().toMillis() / 1000 * 1000;
+        String etag = etag(fileName, size);
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl(cachePolicy));
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        ByteRange range = null;
+        if (isIfRangeSatisfied(request, etag, lastModified)) {
+            range = parseRange(request.getHeader(HttpHeaders.RANGE), size);
+        }
+        if (range == ByteRange.UNSATISFIABLE) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            return;
+        }
+        if (range == null) {
+            range = new ByteRange(0, size - 1);
+            response.setStatus(HttpServletResponse.SC_OK);
+        } else {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + range.start() + "-" + range.end() + "/" + size);
+        }
+
+        MediaType mediaType = MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        response.setContentType(mediaType.toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        response.setContentLengthLong(range.length());
+
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || range.length() == 0) {
+            return;
+        }
+
+        if (range.length() >= sendfileMinBytes && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            // Tomcat writes the bytes straight from the page cache to the socket once we return
+            request.setAttribute(SENDFILE_FILENAME_ATTR, filePath.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, range.start());
+            request.setAttribute(SENDFILE_END_ATTR, range.end() + 1);
+            return;
+        }
+
+        transfer(filePath, range, response);
+    }
+
+    // Remote stores hand out a short-lived signed URL; the client downloads straight from there
+    private void redirectToStore(String fileName, HttpServletResponse response) {
+        MediaType mediaType = MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        Optional<URI> url = fileStorageService.presignedDownloadUrl(fileName, presignedUrlTtl,
+                mediaType.toString(), "attachment; filename=\"" + fileName + "\"");
+        if (url.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        // The signature expires, so the redirect itself must not be cached
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-store");
+        response.setStatus(HttpServletResponse.SC_FOUND);
+        response.setHeader(HttpHeaders.LOCATION, url.get().toString());
+    }
+
+    private void transfer(Path filePath, ByteRange range, HttpServletResponse response) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = range.start();
+            long remaining = range.length();
+            while (remaining > 0) {
+                long written = channel.transferTo(position, remaining, out);
+                if (written <= 0) {
+                    log.warn("Short transfer of {}: {} bytes left", filePath.getFileName(), remaining);
+                    break;
+                }
+                position += written;
+                remaining -= written;
+            }
+        }
+    }
+
+    private static boolean isSafeName(String fileName) {
+        return fileName != null && !fileName.isBlank() && !fileName.contains("..")
+                && !fileName.contains("/") && !fileName.contains("\\");
+    }
+
+    private String cacheControl(CachePolicy cachePolicy) {
+        return switch (cachePolicy) {
+            case PRIVATE -> "private, no-cache";
+            case PUBLIC_IMMUTABLE -> "public, max-age=" + publicMaxAgeSeconds + ", immutable";
+        };
+    }
+
+    static String etag(String fileName, long size) {
+        return "\"" + fileName + "-" + Long.toHexString(size) + "\"";
+    }
+
+    private boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since and uses weak comparison
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+    }
+
+    private boolean isIfRangeSatisfied(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range requires strong comparison
+            return ifRange.equals(etag);
+        }
+        long date = dateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && lastModified <= date;
+    }
+
+    private long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses a Range header against a file of the given size. Returns null when the whole
+     * file should be sent (no header, a malformed one, or several ranges, which we do not
+     * serve as multipart) and {@link ByteRange#UNSATISFIABLE} for a range outside the file.
+     */
+    static ByteRange parseRange(String header, long size) {
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        if (spec.isEmpty() || spec.contains(",")) {
+            return null;
+        }
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // Suffix range: the last N bytes
+                if (last.isEmpty()) {
+                    return null;
+                }
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return ByteRange.UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0, size - suffix), size - 1);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            if (start >= size) {
+                return ByteRange.UNSATISFIABLE;
+            }
+            if (end < start) {
+                return null;
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,24 +1,70 @@
 package com.stitch.app.service;
 
+import com.stitch.app.dto.StoredFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
+/**
+ * Names, hashes and stores uploads in the configured {@link BlobStore}. Uploads are
+ * written once, to a temp file in file.upload.dir (which every backend needs as scratch
+ * space), while they are hashed; the store then takes that file over, which for the
+ * local store is a rename into place. Parts come from memory as long as they stay under
+ * spring.servlet.multipart.file-size-threshold.
+ */
 @Service
 public class FileStorageService {
 
+    private static final Logger log = LoggerFactory.getLogger(FileStorageService.class);
+
+    // sha256 hex + optional extension; anything else is a legacy UUID name
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("[0-9a-f]{64}(\\.[A-Za-z0-9]+)?");
+
+    private static final String STAGING_DIR = ".staging";
+
     private final Path fileStorageLocation;
+    private final boolean contentAddressed;
+    private final BlobStore blobStore;
+    private final ImageVariantService imageVariantService;
+    private final StoredBlobService storedBlobService;
 
-    public FileStorageService(@Value("${file.upload.dir:./uploads}") String uploadDir) {
+    public FileStorageService(@Value("${file.upload.dir:./uploads}") String uploadDir,
+                              @Value("${file.storage.content-addressed:false}") boolean contentAddressed,
+                              BlobStore blobStore,
+                              ImageVariantService imageVariantService,
+                              StoredBlobService storedBlobService) {
         this.fileStorageLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.contentAddressed = contentAddressed;
+        this.blobStore = blobStore;
+        this.imageVariantService = imageVariantService;
+        this.storedBlobService = storedBlobService;
 
         try {
             Files.createDirectories(this.fileStorageLocation);
@@ -28,48 +74,180 @@ public class FileStorageService {
     }
 
     public String storeFile(MultipartFile file) {
+        return store(file).getFileName();
+    }
+
+    /**
+     * Stores an upload and returns its stored name and metadata. The SHA-256 is computed
+     * while the bytes stream to disk. In content-addressed mode the file is stored once
+     * under its hash, and re-uploads of known content only add a reference.
+     */
+    public StoredFile store(MultipartFile file) {
         // Normalize file name
-        String originalFileName = StringUtils.cleanPath(file.getOriginalFilename());
+        String originalFileName = StringUtils.cleanPath(file.getOriginalFilename() == null ? "" : file.getOriginalFilename());
+
+        // Check if the file's name contains invalid characters
+        if (originalFileName.contains("..")) {
+            throw new RuntimeException("Invalid file path: " + originalFileName);
+        }
+
+        String fileExtension = "";
+        int dotIndex = originalFileName.lastIndexOf('.');
+        if (dotIndex > 0) {
+            fileExtension = originalFileName.substring(dotIndex);
+        }
 
+        Path tempFile = null;
         try {
-            // Check if the file's name contains invalid characters
-            if (originalFileName.contains("..")) {
-                throw new RuntimeException("Invalid file path: " + originalFileName);
+            tempFile = Files.createTempFile(fileStorageLocation, ".upload-", ".tmp");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size;
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                size = Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
             }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
 
-            // Generate unique filename
-            String fileExtension = "";
-            int dotIndex = originalFileName.lastIndexOf('.');
-            if (dotIndex > 0) {
-                fileExtension = originalFileName.substring(dotIndex);
+            if (!contentAddressed) {
+                // Generate unique filename
+                String fileName = UUID.randomUUID() + fileExtension;
+                publish(fileName, tempFile, file.getContentType());
+                return new StoredFile(fileName, size, file.getContentType(), sha256, false);
             }
 
-            String fileName = UUID.randomUUID().toString() + fileExtension;
+            String fileName = sha256 + fileExtension.toLowerCase(Locale.ROOT);
+            Path source = tempFile;
+            boolean written = storedBlobService.retain(fileName, sha256, size, file.getContentType(),
+                    () -> publishIfMissing(fileName, source, file.getContentType()));
+            return new StoredFile(fileName, size, file.getContentType(), sha256, !written);
+        } catch (IOException | UncheckedIOException ex) {
+            throw new RuntimeException("Could not store file " + originalFileName + ". Please try again!", ex);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    private boolean publishIfMissing(String fileName, Path source, String contentType) {
+        if (blobStore.exists(fileName)) {
+            return false;
+        }
+        try {
+            publish(fileName, source, contentType);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Puts a finished upload into the store; thumbnails and medium versions follow in the background
+    private void publish(String fileName, Path source, String contentType) throws IOException {
+        if (!ImageVariantService.isImage(fileName) || blobStore.localPath(fileName).isPresent()) {
+            blobStore.put(fileName, source, contentType);
+            blobStore.localPath(fileName).ifPresent(imageVariantService::generateAsync);
+            return;
+        }
+        // Remote stores: variants are made from a local staged copy and uploaded after it
+        Path staged = stage(fileName, source);
+        blobStore.put(fileName, source, contentType);
+        imageVariantService.generateAsync(staged, variants -> uploadVariants(staged, variants));
+    }
 
-            // Copy file to the target location
-            Path targetLocation = this.fileStorageLocation.resolve(fileName);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+    private Path stage(String fileName, Path source) throws IOException {
+        Path staged = Files.createDirectories(fileStorageLocation.resolve(STAGING_DIR)).resolve(fileName);
+        try {
+            Files.createLink(staged, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, staged, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return staged;
+    }
 
-            return fileName;
+    private void uploadVariants(Path staged, List<Path> variants) {
+        for (Path variant : variants) {
+            try {
+                blobStore.put(variant.getFileName().toString(), variant, MediaType.IMAGE_JPEG_VALUE);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not upload variant {}: {}", variant.getFileName(), e.getMessage());
+                deleteQuietly(variant);
+            }
+        }
+        deleteQuietly(staged);
+    }
+
+    // Metadata of an already stored file; size and hash are null if the file is gone
+    public StoredFile describe(String fileName) {
+        String contentType = MediaTypeFactory.getMediaType(fileName).map(MediaType::toString).orElse(null);
+        try (InputStream in = blobStore.open(fileName)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size = in.transferTo(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+            return new StoredFile(fileName, size, contentType, HexFormat.of().formatHex(digest.digest()), false);
+        } catch (NoSuchFileException ex) {
+            return new StoredFile(fileName, 0, contentType, null, false);
         } catch (IOException ex) {
-            throw new RuntimeException("Could not store file " + originalFileName + ". Please try again!", ex);
+            throw new RuntimeException("Could not read stored file " + fileName, ex);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
         }
     }
 
-    public Path loadFile(String fileName) {
-        return fileStorageLocation.resolve(fileName).normalize();
+    public static boolean isContentAddressed(String fileName) {
+        return fileName != null && CONTENT_ADDRESSED_NAME.matcher(fileName).matches();
+    }
+
+    // The local file behind a stored name; empty when the store is remote
+    public Optional<Path> localPath(String fileName) {
+        return blobStore.localPath(fileName);
+    }
+
+    public Optional<URI> presignedDownloadUrl(String fileName, Duration ttl, String contentType, String contentDisposition) {
+        return blobStore.presignedGetUrl(fileName, ttl, contentType, contentDisposition);
     }
 
+    // Returns the stored name of the requested variant, or the original name if there is none (yet)
+    public String resolveVariant(String fileName, ImageVariantService.Variant variant) {
+        if (variant == null || !ImageVariantService.isImage(fileName)) {
+            return fileName;
+        }
+        String variantName = ImageVariantService.variantFileName(fileName, variant);
+        return blobStore.exists(variantName) ? variantName : fileName;
+    }
+
+    // Content-addressed blobs lose one reference and disappear with the last one; legacy files go at once
     public void deleteFile(String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            return;
+        }
+        if (isContentAddressed(fileName)) {
+            storedBlobService.release(fileName, () -> deletePhysicalFile(fileName));
+        } else {
+            deletePhysicalFile(fileName);
+        }
+    }
+
+    private void deletePhysicalFile(String fileName) {
         try {
-            if (fileName != null && !fileName.isEmpty()) {
-                Path filePath = fileStorageLocation.resolve(fileName).normalize();
-                boolean deleted = Files.deleteIfExists(filePath);
-                System.out.println("File deletion - fileName: " + fileName + ", deleted: " + deleted);
+            boolean deleted = blobStore.delete(fileName);
+            if (ImageVariantService.isImage(fileName)) {
+                for (ImageVariantService.Variant variant : ImageVariantService.Variant.values()) {
+                    blobStore.delete(ImageVariantService.variantFileName(fileName, variant));
+                }
             }
-        } catch (IOException ex) {
+            System.out.println("File deletion - fileName: " + fileName + ", deleted: " + deleted);
+        } catch (IOException | RuntimeException ex) {
             // Log error but don't throw exception to prevent delete operation from failing
             System.err.println("Warning: Could not delete file " + fileName + ": " + ex.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // A leftover temp file is harmless; it is never referenced
+        }
+    }
+}
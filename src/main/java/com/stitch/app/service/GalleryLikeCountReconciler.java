@@ -0,0 +1,33 @@
+package com.stitch.app.service;
+
+import com.stitch.app.repository.GalleryImageRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Periodically repairs gallery_images.like_count from gallery_likes. The counter is kept
+ * in step by GalleryService.toggleLike; this only catches drift from manual data fixes,
+ * bulk deletes of users or likes, or rows created before the column existed.
+ */
+@Component
+@RequiredArgsConstructor
+public class GalleryLikeCountReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(GalleryLikeCountReconciler.class);
+
+    private final GalleryImageRepository galleryImageRepository;
+
+    @Transactional
+    @Scheduled(initialDelayString = "${gallery.like-count.reconcile-initial-delay-ms:60000}",
+            fixedDelayString = "${gallery.like-count.reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        int repaired = galleryImageRepository.reconcileLikeCounts();
+        if (repaired > 0) {
+            log.info("Repaired like_count on {} gallery image(s)", repaired);
+        }
+    }
+}
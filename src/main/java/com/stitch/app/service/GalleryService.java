@@ -1,6 +1,8 @@
 package com.stitch.app.service;
 
+import com.stitch.app.dto.CursorPage;
 import com.stitch.app.dto.GalleryImageDTO;
+import com.stitch.app.dto.KeysetCursor;
 import com.stitch.app.entity.GalleryImage;
 import com.stitch.app.entity.GalleryLike;
 import com.stitch.app.entity.Notification;
@@ -14,7 +16,6 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -24,7 +25,9 @@ public class GalleryService {
     private final GalleryLikeRepository galleryLikeRepository;
     private final FileStorageService fileStorageService;
     private final UserRepository userRepository;
-    private final NotificationService notificationService;
+    private final NotificationFanoutService notificationFanoutService;
+
+    private static final int MAX_PAGE_SIZE = 100;
 
     @Transactional
     public GalleryImage uploadImage(MultipartFile file, String title, String description, String uploaderEmail) {
@@ -47,49 +50,31 @@ public class GalleryService {
     }
 
     private void notifyCustomersAboutNewPhoto(GalleryImage image) {
-        List<User> customers = userRepository.findByRole(User.Role.CUSTOMER);
         String photoTitle = (image.getTitle() != null && !image.getTitle().isEmpty())
                 ? image.getTitle()
                 : "New Photo";
 
-        for (User customer : customers) {
-            notificationService.createNotification(
-                    customer,
-                    "New Gallery Photo",
-                    "A new photo has been added to the gallery: " + photoTitle,
-                    Notification.NotificationType.GALLERY_PHOTO_UPLOADED
-            );
-        }
+        notificationFanoutService.notifyRole(
+                User.Role.CUSTOMER,
+                "New Gallery Photo",
+                "A new photo has been added to the gallery: " + photoTitle,
+                Notification.NotificationType.GALLERY_PHOTO_UPLOADED
+        );
     }
 
-    // New: listAll with awareness of current user to compute likedByCurrentUser
-    public List<GalleryImageDTO> listAll(String currentUserEmail) {
-        User currentUser = null;
-        if (currentUserEmail != null) {
-            currentUser = userRepository.findByEmail(currentUserEmail).orElse(null);
+    // Keyset page of the gallery (newest first); currentUserId may be null for anonymous visitors
+    public CursorPage<GalleryImageDTO> listPage(Long currentUserId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        // Fetch one extra row to know whether another page exists
+        List<GalleryImageDTO> rows = galleryImageRepository.findPageWithLikes(currentUserId, KeysetCursor.decode(cursor), pageSize + 1);
+        if (rows.size() <= pageSize) {
+            return CursorPage.of(rows, null);
         }
-        final User finalCurrentUser = currentUser;
-
-        System.out.println("GalleryService.listAll called for user: " + currentUserEmail +
-                         " (userId: " + (finalCurrentUser != null ? finalCurrentUser.getId() : "null") + ")");
-
-        return galleryImageRepository.findAllByOrderByCreatedAtDesc().stream()
-                .map(img -> {
-                    long likes = galleryLikeRepository.countByImage(img);
-                    boolean likedByCurrentUser = false;
-                    if (finalCurrentUser != null) {
-                        likedByCurrentUser = galleryLikeRepository.findByImageAndUser(img, finalCurrentUser).isPresent();
-                        System.out.println("  Image ID " + img.getId() + ": liked by user " +
-                                         finalCurrentUser.getId() + " = " + likedByCurrentUser);
-                    }
-                    return GalleryImageDTO.from(img, likes, likedByCurrentUser);
-                })
-                .collect(Collectors.toList());
-    }
 
-    // Keep the original signature for backwards compatibility (delegates to new method with null email)
-    public List<GalleryImageDTO> listAll() {
-        return listAll(null);
+        List<GalleryImageDTO> page = rows.subList(0, pageSize);
+        GalleryImageDTO last = page.get(pageSize - 1);
+        return CursorPage.of(page, new KeysetCursor(last.getCreatedAt(), last.getId()).encode());
     }
 
     public GalleryImage getById(Long id) {
@@ -103,35 +88,32 @@ public class GalleryService {
         GalleryLike like = galleryLikeRepository.findByImageAndUser(img, user).orElse(null);
 
         if (like == null) {
-            System.out.println("User " + user.getId() + " (" + userEmail + ") LIKED image " + imageId);
-            galleryLikeRepository.save(GalleryLike.builder().image(img).user(user).build());
+            // Flush first so a concurrent duplicate like fails on the unique constraint before the counter moves
+            galleryLikeRepository.saveAndFlush(GalleryLike.builder().image(img).user(user).build());
+            galleryImageRepository.incrementLikeCount(imageId);
 
             // Notify all admins when a customer likes a photo
             notifyAdminsAboutPhotoLike(img, user);
         } else {
-            System.out.println("User " + user.getId() + " (" + userEmail + ") UNLIKED image " + imageId);
             galleryLikeRepository.delete(like);
+            galleryLikeRepository.flush();
+            galleryImageRepository.decrementLikeCount(imageId);
         }
 
-        long totalLikes = galleryLikeRepository.countByImage(img);
-        System.out.println("Image " + imageId + " now has " + totalLikes + " total likes");
-        return totalLikes;
+        return galleryImageRepository.findLikeCountById(imageId);
     }
 
     private void notifyAdminsAboutPhotoLike(GalleryImage image, User customer) {
-        List<User> admins = userRepository.findByRole(User.Role.ADMIN);
         String photoTitle = (image.getTitle() != null && !image.getTitle().isEmpty())
                 ? image.getTitle()
                 : "Photo #" + image.getId();
 
-        for (User admin : admins) {
-            notificationService.createNotification(
-                    admin,
-                    "Gallery Photo Liked",
-                    customer.getFullName() + " liked the photo: " + photoTitle,
-                    Notification.NotificationType.GALLERY_PHOTO_LIKED
-            );
-        }
+        notificationFanoutService.notifyRole(
+                User.Role.ADMIN,
+                "Gallery Photo Liked",
+                customer.getFullName() + " liked the photo: " + photoTitle,
+                Notification.NotificationType.GALLERY_PHOTO_LIKED
+        );
     }
 
     // New helper: check if a specific user has liked an image
@@ -152,12 +134,6 @@ public class GalleryService {
         return galleryImageRepository.save(img);
     }
 
-    // New helper: return current like count for an image id
-    public long countLikes(Long imageId) {
-        GalleryImage img = galleryImageRepository.findById(imageId).orElseThrow(() -> new RuntimeException("Image not found"));
-        return galleryLikeRepository.countByImage(img);
-    }
-
     @Transactional
     public void deleteImage(Long id) {
         GalleryImage img = getById(id);
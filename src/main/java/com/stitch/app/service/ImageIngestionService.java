@@ -0,0 +1,193 @@
+package com.stitch.app.service;
+
+import com.stitch.app.dto.StoredFile;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Validates and writes the images of one upload request before any database work starts.
+ * Every part is checked (count, size, and image type sniffed from its first bytes) before
+ * the first byte is written; the parts are then stored in parallel on a small bounded pool.
+ * If one part fails, the ones already stored are removed again, and callers hand the
+ * result to {@link #discard} when their transaction fails afterwards.
+ */
+@Service
+public class ImageIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageIngestionService.class);
+
+    private static final int SNIFF_BYTES = 12;
+
+    private final FileStorageService fileStorageService;
+    private final long maxImageBytes;
+    private final int maxImagesPerRequest;
+    private final int workers;
+    private final int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    public ImageIngestionService(FileStorageService fileStorageService,
+                                 @Value("${file.ingest.max-image-bytes:10485760}") long maxImageBytes,
+                                 @Value("${file.ingest.max-images-per-request:10}") int maxImagesPerRequest,
+                                 @Value("${file.ingest.workers:4}") int workers,
+                                 @Value("${file.ingest.queue-capacity:100}") int queueCapacity) {
+        this.fileStorageService = fileStorageService;
+        this.maxImageBytes = maxImageBytes;
+        this.maxImagesPerRequest = maxImagesPerRequest;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        // When the pool is saturated the request thread writes its own files
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-ingest-" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Stores the non-empty parts and returns them in request order. Throws without leaving
+     * any stored file behind if a part is invalid or can not be written.
+     */
+    public List<StoredFile> ingest(MultipartFile[] images) {
+        List<MultipartFile> parts = images == null ? List.of()
+                : Arrays.stream(images).filter(img -> img != null && !img.isEmpty()).toList();
+        if (parts.isEmpty()) {
+            return List.of();
+        }
+        if (parts.size() > maxImagesPerRequest) {
+            throw new RuntimeException("Too many images: at most " + maxImagesPerRequest + " per request");
+        }
+        parts.forEach(this::validate);
+
+        if (parts.size() == 1) {
+            return List.of(fileStorageService.store(parts.get(0)));
+        }
+
+        List<Future<StoredFile>> futures = new ArrayList<>();
+        for (MultipartFile part : parts) {
+            futures.add(executor.submit(() -> fileStorageService.store(part)));
+        }
+
+        List<StoredFile> stored = new ArrayList<>();
+        RuntimeException failure = null;
+        for (Future<StoredFile> future : futures) {
+            try {
+                stored.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException re ? re
+                            : new RuntimeException("Could not store image", e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                failure = new RuntimeException("Image upload interrupted", e);
+                break;
+            }
+        }
+        if (failure != null) {
+            discard(stored);
+            throw failure;
+        }
+        return stored;
+    }
+
+    // Removes files stored by ingest() whose database rows were never committed
+    public void discard(List<StoredFile> stored) {
+        for (StoredFile file : stored) {
+            try {
+                fileStorageService.deleteFile(file.getFileName());
+            } catch (Exception e) {
+                log.warn("Could not remove uncommitted upload {}: {}", file.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    private void validate(MultipartFile part) {
+        String name = part.getOriginalFilename();
+        if (part.getSize() > maxImageBytes) {
+            throw new RuntimeException("Image " + name + " is larger than " + maxImageBytes / (1024 * 1024) + " MB");
+        }
+        if (part.getContentType() != null && !part.getContentType().startsWith("image/")) {
+            throw new RuntimeException("File " + name + " is not an image");
+        }
+        byte[] head;
+        try (InputStream in = part.getInputStream()) {
+            head = in.readNBytes(SNIFF_BYTES);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read upload " + name, e);
+        }
+        if (sniffImageType(head) == null) {
+            throw new RuntimeException("File " + name + " is not a supported image (JPEG, PNG, GIF, WebP or HEIC)");
+        }
+    }
+
+    // Detects the image format from its signature, or null if it is not one we accept
+    static String sniffImageType(byte[] head) {
+        if (startsWith(head, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(head, 0, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(head, 0, 'R', 'I', 'F', 'F') && startsWith(head, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        if (startsWith(head, 4, 'f', 't', 'y', 'p') && head.length >= 12) {
+            String brand = new String(head, 8, 4, StandardCharsets.US_ASCII);
+            if (brand.startsWith("hei") || brand.startsWith("hev") || brand.equals("mif1") || brand.equals("msf1")) {
+                return "image/heic";
+            }
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int offset, int... signature) {
+        if (head.length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
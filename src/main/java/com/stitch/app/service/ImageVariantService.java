@@ -0,0 +1,360 @@
+package com.stitch.app.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Produces downscaled JPEG variants (thumb / medium) next to stored images so list views
+ * do not have to download originals. Generation runs on a small bounded pool after the
+ * upload has been written; until a variant exists the original is served instead.
+ * Images already smaller than a variant's bound, or whose variant would not be smaller in
+ * bytes, get no file for that variant. Variants carry no metadata, so the EXIF orientation
+ * of a JPEG is applied to their pixels, the way viewers display the original.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageVariantService.class);
+
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    public enum Variant {
+        THUMB(320),
+        MEDIUM(1024);
+
+        private final int maxDimension;
+
+        Variant(int maxDimension) {
+            this.maxDimension = maxDimension;
+        }
+
+        public int getMaxDimension() {
+            return maxDimension;
+        }
+
+        // Maps the ?size= request parameter; null or "original" (or anything unknown) means the original file
+        public static Variant fromParam(String size) {
+            if (size == null) {
+                return null;
+            }
+            return switch (size.toLowerCase(Locale.ROOT)) {
+                case "thumb", "thumbnail" -> THUMB;
+                case "medium" -> MEDIUM;
+                default -> null;
+            };
+        }
+    }
+
+    private final boolean enabled;
+    private final int workers;
+    private final int queueCapacity;
+    private final float jpegQuality;
+
+    private ThreadPoolExecutor executor;
+
+    public ImageVariantService(@Value("${file.variants.enabled:true}") boolean enabled,
+                               @Value("${file.variants.workers:2}") int workers,
+                               @Value("${file.variants.queue-capacity:500}") int queueCapacity,
+                               @Value("${file.variants.jpeg-quality:0.82}") float jpegQuality) {
+        this.enabled = enabled;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.jpegQuality = jpegQuality;
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-variants-" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Image variant generation still running at shutdown; {} queued jobs dropped", executor.shutdownNow().size());
+        }
+    }
+
+    public static boolean isImage(String fileName) {
+        return MediaTypeFactory.getMediaType(fileName)
+                .map(type -> "image".equals(type.getType()))
+                .orElse(false);
+    }
+
+    // uuid.png -> uuid_thumb.jpg
+    public static String variantFileName(String fileName, Variant variant) {
+        int dot = fileName.lastIndexOf('.');
+        String stem = dot > 0 ? fileName.substring(0, dot) : fileName;
+        return stem + "_" + variant.name().toLowerCase(Locale.ROOT) + ".jpg";
+    }
+
+    // uuid_thumb.jpg -> uuid; null for names that are not variants
+    public static String originalStem(String fileName) {
+        for (Variant variant : Variant.values()) {
+            String suffix = "_" + variant.name().toLowerCase(Locale.ROOT) + ".jpg";
+            if (fileName.endsWith(suffix) && fileName.length() > suffix.length()) {
+                return fileName.substring(0, fileName.length() - suffix.length());
+            }
+        }
+        return null;
+    }
+
+    // Queues variant generation for a freshly stored file; a full queue only costs the variants
+    public void generateAsync(Path original) {
+        generateAsync(original, variants -> { });
+    }
+
+    /**
+     * Like {@link #generateAsync(Path)}, then hands the written variant files to onComplete.
+     * onComplete always runs exactly once (with an empty list when nothing was generated),
+     * so callers can use it to clean up a staged original.
+     */
+    public void generateAsync(Path original, Consumer<List<Path>> onComplete) {
+        if (!enabled || !isImage(original.getFileName().toString())) {
+            onComplete.accept(List.of());
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                List<Path> variants = List.of();
+                try {
+                    variants = generate(original);
+                } catch (Exception e) {
+                    log.warn("Could not create variants for {}: {}", original.getFileName(), e.getMessage());
+                } finally {
+                    onComplete.accept(variants);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Image variant queue full; {} will be served at original size", original.getFileName());
+            onComplete.accept(List.of());
+        }
+    }
+
+    List<Path> generate(Path original) throws IOException {
+        DecodedImage decoded = readSubsampled(original, Variant.MEDIUM.getMaxDimension() * 2);
+        if (decoded == null) {
+            // No ImageIO reader for this format (e.g. WebP/HEIC)
+            return List.of();
+        }
+        int orientation = readExifOrientation(original);
+        List<Path> written = new ArrayList<>();
+        for (Variant variant : Variant.values()) {
+            if (decoded.originalMaxDimension() <= variant.getMaxDimension()) {
+                continue;
+            }
+            // Scaling is symmetric in width and height, so orienting the smaller result is enough
+            BufferedImage scaled = orient(scale(decoded.image(), variant.getMaxDimension()), orientation);
+            Path target = original.resolveSibling(variantFileName(original.getFileName().toString(), variant));
+            writeJpeg(scaled, target);
+            // A variant that is not smaller than the upload (already well compressed) is of no use
+            if (Files.size(target) >= Files.size(original)) {
+                Files.delete(target);
+            } else {
+                written.add(target);
+            }
+        }
+        return written;
+    }
+
+    public void deleteVariants(Path original) throws IOException {
+        String fileName = original.getFileName().toString();
+        if (!isImage(fileName)) {
+            return;
+        }
+        for (Variant variant : Variant.values()) {
+            Files.deleteIfExists(original.resolveSibling(variantFileName(fileName, variant)));
+        }
+    }
+
+    private record DecodedImage(BufferedImage image, int originalMaxDimension) {
+    }
+
+    // Decodes with source subsampling so a large photo never has to be held at full resolution
+    private DecodedImage readSubsampled(Path file, int targetMaxDimension) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int maxDimension = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, maxDimension / targetMaxDimension);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return new DecodedImage(reader.read(0, param), maxDimension);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * The EXIF Orientation (1-8) of a JPEG, from the TIFF header in its APP1 segment; 1 (as
+     * stored) for other formats, or when the tag is missing or unreadable.
+     */
+    static int readExifOrientation(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readUnsignedShort() != 0xFFD8) {
+                return 1;
+            }
+            while (true) {
+                int marker = in.readUnsignedShort();
+                // Metadata segments all come before the image data (start of scan)
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+                    return 1;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (marker != 0xFFE1 || length < 14) {
+                    in.skipNBytes(length);
+                    continue;
+                }
+                byte[] segment = in.readNBytes(length);
+                if (segment.length == length && new String(segment, 0, 6, StandardCharsets.ISO_8859_1).equals("Exif\0\0")) {
+                    return tiffOrientation(ByteBuffer.wrap(segment, 6, length - 6).slice());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return 1;
+        }
+    }
+
+    private static int tiffOrientation(ByteBuffer tiff) {
+        tiff.order(tiff.getShort(0) == 0x4949 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd = tiff.getInt(4);
+        int entries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if ((tiff.getShort(entry) & 0xFFFF) == EXIF_ORIENTATION_TAG) {
+                int orientation = tiff.getShort(entry + 8) & 0xFFFF;
+                return orientation >= 1 && orientation <= 8 ? orientation : 1;
+            }
+        }
+        return 1;
+    }
+
+    // Maps each stored pixel to where a viewer shows it; 5-8 swap width and height
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation <= 1) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        boolean swap = orientation >= 5;
+        BufferedImage oriented = new BufferedImage(swap ? h : w, swap ? w : h, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int rgb = image.getRGB(x, y);
+                switch (orientation) {
+                    case 2 -> oriented.setRGB(w - 1 - x, y, rgb);
+                    case 3 -> oriented.setRGB(w - 1 - x, h - 1 - y, rgb);
+                    case 4 -> oriented.setRGB(x, h - 1 - y, rgb);
+                    case 5 -> oriented.setRGB(y, x, rgb);
+                    case 6 -> oriented.setRGB(h - 1 - y, x, rgb);
+                    case 7 -> oriented.setRGB(h - 1 - y, w - 1 - x, rgb);
+                    default -> oriented.setRGB(y, w - 1 - x, rgb);
+                }
+            }
+        }
+        return oriented;
+    }
+
+    // Halves the image with bilinear filtering until close to the target, then does the final step
+    private BufferedImage scale(BufferedImage source, int maxDimension) {
+        double ratio = (double) maxDimension / Math.max(source.getWidth(), source.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                // JPEG has no alpha channel; flatten transparency onto white
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    // Written to a temp file and renamed, so readers never see a half-written variant
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), ".variant-", ".tmp");
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(output);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
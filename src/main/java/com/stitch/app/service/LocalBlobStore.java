@@ -0,0 +1,172 @@
+package com.stitch.app.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * BlobStore on the local upload directory. Blobs live in two levels of hashed shard
+ * directories (ab/cd/name); files from before the sharded layout are still found in the
+ * flat directory until FileLayoutMigrator has moved them.
+ */
+public class LocalBlobStore implements BlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalBlobStore.class);
+
+    private final Path root;
+    private final boolean sharded;
+    private final boolean durableWrites;
+
+    private ThreadPoolExecutor syncExecutor;
+
+    public LocalBlobStore(Path root, boolean sharded, boolean durableWrites) {
+        this.root = root.toAbsolutePath().normalize();
+        this.sharded = sharded;
+        this.durableWrites = durableWrites;
+
+        try {
+            Files.createDirectories(this.root);
+        } catch (Exception ex) {
+            throw new RuntimeException("Could not create the directory where the uploaded files will be stored.", ex);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!durableWrites) {
+            return;
+        }
+        // One thread is enough: fsyncs on the same device serialize anyway
+        syncExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1000),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "file-fsync");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (syncExecutor == null) {
+            return;
+        }
+        // Let queued fsyncs finish so everything acknowledged before shutdown is on disk
+        syncExecutor.shutdown();
+        if (!syncExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("{} pending fsyncs dropped at shutdown", syncExecutor.shutdownNow().size());
+        }
+    }
+
+    @Override
+    public void put(String name, Path source, String contentType) throws IOException {
+        Path target = storagePath(name);
+        Files.createDirectories(target.getParent());
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        syncAsync(target);
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return Files.exists(resolve(name));
+    }
+
+    @Override
+    public boolean delete(String name) throws IOException {
+        return Files.deleteIfExists(resolve(name));
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        return Files.newInputStream(resolve(name));
+    }
+
+    @Override
+    public Optional<Path> localPath(String name) {
+        return Optional.of(resolve(name));
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    // Where the blob is: its shard, or the flat directory for files not migrated yet
+    public Path resolve(String name) {
+        Path flat = root.resolve(name).normalize();
+        if (!sharded) {
+            return flat;
+        }
+        Path shardedPath = storagePath(name);
+        if (Files.exists(shardedPath) || !Files.exists(flat)) {
+            return shardedPath;
+        }
+        return flat;
+    }
+
+    // Where a new blob of this name is written
+    public Path storagePath(String name) {
+        if (!sharded) {
+            return root.resolve(name).normalize();
+        }
+        return root.resolve(shardPrefix(name)).resolve(name).normalize();
+    }
+
+    /**
+     * Two levels of 256 directories ("3f/a0"), keyed by a hash of the name without its
+     * extension or variant suffix, so an image and its variants share a directory.
+     */
+    static String shardPrefix(String name) {
+        String stem = ImageVariantService.originalStem(name);
+        if (stem == null) {
+            int dot = name.lastIndexOf('.');
+            stem = dot > 0 ? name.substring(0, dot) : name;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(stem.getBytes(StandardCharsets.UTF_8));
+        long hash = crc.getValue();
+        return String.format("%02x/%02x", (hash >>> 8) & 0xFF, hash & 0xFF);
+    }
+
+    // With durable writes on, flushes the file and its directory entry without holding up the request
+    private void syncAsync(Path file) {
+        if (syncExecutor == null) {
+            return;
+        }
+        syncExecutor.execute(() -> {
+            try {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    channel.force(true);
+                }
+                // The rename is only durable once the directory is synced as well
+                try (FileChannel directory = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+                    directory.force(true);
+                }
+            } catch (NoSuchFileException e) {
+                // Deleted before we got to it
+            } catch (IOException e) {
+                log.warn("Could not fsync {}: {}", file.getFileName(), e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,266 @@
+package com.stitch.app.service;
+
+import com.stitch.app.dto.MailDispatchStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound mail pipeline. Callers enqueue messages and return immediately; a
+ * small pool of worker threads drains the bounded queue in batches, sending
+ * each batch over a single SMTP connection and retrying failures with
+ * exponential backoff. When the queue is full, enqueue blocks for up to
+ * mail.dispatch.offer-timeout-ms and then rejects the message; mail queued
+ * after a commit never waits and is dropped straight away.
+ */
+@Service
+public class MailDispatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(MailDispatchService.class);
+
+    private static final String FROM_ADDRESS = "noreply@stitch.com";
+
+    private final JavaMailSender mailSender;
+    private final BlockingQueue<SimpleMailMessage> queue;
+    private final int workerCount;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long offerTimeoutMs;
+    private final boolean virtualThreads;
+    private final List<Thread> workers = new ArrayList<>();
+
+    private volatile boolean running;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong droppedAfterCommit = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong totalBatchNanos = new AtomicLong();
+    private final AtomicLong maxBatchNanos = new AtomicLong();
+
+    public MailDispatchService(JavaMailSender mailSender,
+                               @Value("${mail.dispatch.queue-capacity:10000}") int queueCapacity,
+                               @Value("${mail.dispatch.workers:4}") int workerCount,
+                               @Value("${mail.dispatch.batch-size:50}") int batchSize,
+                               @Value("${mail.dispatch.max-attempts:3}") int maxAttempts,
+                               @Value("${mail.dispatch.initial-backoff-ms:500}") long initialBackoffMs,
+                               @Value("${mail.dispatch.offer-timeout-ms:100}") long offerTimeoutMs,
+                               @Value("${mail.dispatch.virtual-threads:true}") boolean virtualThreads) {
+        this.mailSender = mailSender;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.virtualThreads = virtualThreads;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        Thread.Builder builder = virtualThreads
+                ? Thread.ofVirtual().name("mail-dispatch-", 0)
+                : Thread.ofPlatform().daemon(true).name("mail-dispatch-", 0);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(builder.start(this::runWorker));
+        }
+        log.info("Mail dispatch started with {} workers, queue capacity {}", workerCount, queue.remainingCapacity());
+    }
+
+    // Workers finish whatever is already queued before the context goes away
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Mail dispatch stopped with {} unsent messages", queue.size());
+        }
+    }
+
+    /**
+     * Queue a plain-text email. Returns false if the queue stayed full for the
+     * whole offer timeout and the message was dropped.
+     */
+    public boolean enqueue(String to, String subject, String text) {
+        SimpleMailMessage message = message(to, subject, text);
+        try {
+            if (queue.offer(message, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                enqueued.incrementAndGet();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        rejected.incrementAndGet();
+        log.warn("Mail queue full - dropping email to {}", to);
+        return false;
+    }
+
+    /**
+     * Queue the same email for several recipients once the current transaction
+     * commits, so rolled-back work never sends mail. Without an active
+     * transaction the messages are queued right away. This runs on the thread
+     * that committed, so a full queue drops the mail instead of holding the
+     * request for the offer timeout per recipient.
+     */
+    public void enqueueAfterCommit(List<String> recipients, String subject, String text) {
+        Runnable action = () -> offerAll(recipients, subject, text);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    public MailDispatchStats getStats() {
+        long batchCount = batches.get();
+        return MailDispatchStats.builder()
+                .queueDepth(queue.size())
+                .remainingCapacity(queue.remainingCapacity())
+                .enqueued(enqueued.get())
+                .sent(sent.get())
+                .failed(failed.get())
+                .rejected(rejected.get())
+                .droppedAfterCommit(droppedAfterCommit.get())
+                .retried(retried.get())
+                .batches(batchCount)
+                .avgBatchSendMillis(batchCount == 0 ? 0 : totalBatchNanos.get() / (double) batchCount / 1_000_000)
+                .maxBatchSendMillis(maxBatchNanos.get() / 1_000_000.0)
+                .build();
+    }
+
+    private void offerAll(List<String> recipients, String subject, String text) {
+        int dropped = 0;
+        for (String to : recipients) {
+            if (queue.offer(message(to, subject, text))) {
+                enqueued.incrementAndGet();
+            } else {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            rejected.addAndGet(dropped);
+            droppedAfterCommit.addAndGet(dropped);
+            log.warn("Mail queue full - dropped {} of {} email(s) '{}'", dropped, recipients.size(), subject);
+        }
+    }
+
+    private static SimpleMailMessage message(String to, String subject, String text) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(to);
+        message.setSubject(subject);
+        message.setText(text);
+        message.setFrom(FROM_ADDRESS);
+        return message;
+    }
+
+    private void runWorker() {
+        List<SimpleMailMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                SimpleMailMessage first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                sendWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Unexpected error in mail dispatch worker: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void sendWithRetry(List<SimpleMailMessage> batch) throws InterruptedException {
+        List<SimpleMailMessage> pending = new ArrayList<>(batch);
+
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            try {
+                timedSend(pending);
+                sent.addAndGet(pending.size());
+                return;
+            } catch (MailSendException e) {
+                // Only the messages listed as failed need another attempt
+                List<SimpleMailMessage> failedMessages = new ArrayList<>();
+                e.getFailedMessages().keySet().forEach(key -> {
+                    if (key instanceof SimpleMailMessage failedMessage) {
+                        failedMessages.add(failedMessage);
+                    }
+                });
+                if (!failedMessages.isEmpty()) {
+                    sent.addAndGet(pending.size() - failedMessages.size());
+                    pending = failedMessages;
+                }
+                if (!backOff(attempt, pending, e)) {
+                    return;
+                }
+            } catch (MailException e) {
+                if (!backOff(attempt, pending, e)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void timedSend(List<SimpleMailMessage> messages) {
+        long start = System.nanoTime();
+        try {
+            // JavaMailSenderImpl sends a whole array over one transport connection
+            mailSender.send(messages.toArray(new SimpleMailMessage[0]));
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            batches.incrementAndGet();
+            totalBatchNanos.addAndGet(elapsed);
+            maxBatchNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    // Returns false when the messages have used up their attempts and are given up on
+    private boolean backOff(int attempt, List<SimpleMailMessage> pending, MailException e) throws InterruptedException {
+        if (attempt >= maxAttempts) {
+            failed.addAndGet(pending.size());
+            log.error("Giving up on {} emails after {} attempts: {}", pending.size(), attempt, e.getMessage());
+            return false;
+        }
+        retried.addAndGet(pending.size());
+        long delay = initialBackoffMs * (1L << (attempt - 1));
+        log.warn("Failed to send {} emails (attempt {}/{}), retrying in {} ms: {}",
+                pending.size(), attempt, maxAttempts, delay, e.getMessage());
+        Thread.sleep(delay);
+        return true;
+    }
+}
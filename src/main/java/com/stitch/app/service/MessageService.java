@@ -1,58 +1,194 @@
 package com.stitch.app.service;
 
+import com.stitch.app.config.WebSocketPrincipal;
 import com.stitch.app.dto.ChatUserDTO;
+import com.stitch.app.dto.CursorPage;
 import com.stitch.app.dto.MessageDTO;
 import com.stitch.app.dto.SendMessageRequest;
+import com.stitch.app.entity.Conversation;
 import com.stitch.app.entity.Message;
 import com.stitch.app.entity.User;
+import com.stitch.app.repository.ConversationRepository;
 import com.stitch.app.repository.MessageRepository;
 import com.stitch.app.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 public class MessageService {
 
+    private static final Logger log = LoggerFactory.getLogger(MessageService.class);
+
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final SimpMessagingTemplate messagingTemplate;
+    private final UnreadCounterService unreadCounterService;
+    private final ConversationRepository conversationRepository;
+    private final MessageWriteBehindService messageWriteBehindService;
+    private final TransactionTemplate transactionTemplate;
 
-    @Transactional
+    // Clients subscribe to /user/{id}/queue/messages
+    static final String MESSAGES_DESTINATION = "/queue/messages";
+
+    // PostgreSQL SQLSTATEs of the two constraints an insert can hit
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final String FOREIGN_KEY_VIOLATION = "23503";
+
+    private static final int MAX_HISTORY_PAGE_SIZE = 200;
+    private static final int MAX_INBOX_PAGE_SIZE = 100;
+
+    private static final String CHAT_ADMIN_KEY = "chat-admin";
+
+    // Not populated while no admin exists, so the first admin is found as soon as it is created
+    private final Cache<String, ChatAdmin> chatAdminCache = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .maximumSize(1)
+            .build();
+
+    // Not transactional itself: in write-behind mode a send must not hold a connection while it is buffered
     public MessageDTO sendMessage(SendMessageRequest request, User sender) {
-        // Resolve sender if only id/email provided (WebSocket Principal may pass only username/email)
-        User resolvedSender = resolveUserIfNeeded(sender);
+        if (sender == null || sender.getId() == null) throw new RuntimeException("Sender must not be null");
+        return send(request, sender.getId(), sender.getFullName());
+    }
+
+    // STOMP send path: the session principal already carries everything known about the sender
+    public MessageDTO sendMessage(SendMessageRequest request, WebSocketPrincipal sender) {
+        return send(request, sender.getId(), sender.getDisplayName());
+    }
+
+    private MessageDTO send(SendMessageRequest request, Long senderId, String senderName) {
+        if (request.getReceiverId() == null || request.getContent() == null) {
+            throw new RuntimeException("Receiver and content are required");
+        }
+        String clientMessageId = request.getClientMessageId();
+        if (clientMessageId != null && clientMessageId.length() > Message.CLIENT_MESSAGE_ID_LENGTH) {
+            throw new RuntimeException("clientMessageId must be at most " + Message.CLIENT_MESSAGE_ID_LENGTH + " characters");
+        }
+
+        if (messageWriteBehindService.isEnabled()) {
+            // The buffer pushes the message itself once its batch is stored
+            MessageDTO accepted = messageWriteBehindService.submit(
+                    senderId, senderName, request.getReceiverId(), request.getContent(), clientMessageId);
+            if (accepted != null) {
+                return accepted;
+            }
+            // Buffer full: this message is stored directly instead
+        }
+        try {
+            return transactionTemplate.execute(status -> insert(request, senderId, senderName));
+        } catch (DataIntegrityViolationException e) {
+            String sqlState = sqlState(e);
+            if (UNIQUE_VIOLATION.equals(sqlState) && clientMessageId != null) {
+                // A concurrent retry with the same key won the insert: answer with its message
+                return messageRepository.findByClientMessageId(senderId, clientMessageId).orElseThrow(() -> e);
+            }
+            if (FOREIGN_KEY_VIOLATION.equals(sqlState)) {
+                throw new RuntimeException("Receiver not found");
+            }
+            throw e;
+        }
+    }
+
+    private static String sqlState(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null) {
+                return sqlException.getSQLState();
+            }
+        }
+        return null;
+    }
 
-        User receiver = userRepository.findById(request.getReceiverId())
-                .orElseThrow(() -> new RuntimeException("Receiver not found"));
+    /**
+     * Inserts the message against entity references, so neither user is loaded; a missing
+     * receiver is caught by the foreign key. receiverName is therefore not filled here.
+     */
+    private MessageDTO insert(SendMessageRequest request, Long senderId, String senderName) {
+        if (request.getClientMessageId() != null) {
+            // A retry of a stored send gets the original message back and is not pushed again
+            Optional<MessageDTO> stored = messageRepository.findByClientMessageId(senderId, request.getClientMessageId());
+            if (stored.isPresent()) {
+                return stored.get();
+            }
+        }
 
         Message message = Message.builder()
-                .sender(resolvedSender)
-                .receiver(receiver)
+                .sender(userRepository.getReferenceById(senderId))
+                .receiver(userRepository.getReferenceById(request.getReceiverId()))
                 .content(request.getContent())
+                .clientMessageId(request.getClientMessageId())
                 .isRead(false)
                 .build();
 
+        // Inserted right away (identity id); a constraint violation is mapped in send()
         message = messageRepository.save(message);
+        Long receiverId = request.getReceiverId();
+        unreadCounterService.adjustMessages(receiverId, senderId, 1);
+        recordConversation(message);
 
-        MessageDTO messageDTO = convertToDTO(message);
+        MessageDTO messageDTO = MessageDTO.builder()
+                .id(message.getId())
+                .senderId(senderId)
+                .senderName(senderName)
+                .receiverId(receiverId)
+                .content(message.getContent())
+                .isRead(message.getIsRead())
+                .createdAt(message.getCreatedAt())
+                .clientMessageId(message.getClientMessageId())
+                .build();
+
+        // Only a committed message is pushed: the receiver may mark it read right away
+        afterCommit(() -> pushToReceiver(messageDTO));
+        return messageDTO;
+    }
 
+    private void pushToReceiver(MessageDTO messageDTO) {
         // Send real-time notification to receiver via WebSocket
         // Use receiver id as user destination so client subscribing to /user/{id}/queue/messages will receive it
-        String destinationUser = receiver.getId().toString();
-        messagingTemplate.convertAndSendToUser(
-                destinationUser,
-                "/queue/messages",
-                messageDTO
-        );
+        String destinationUser = messageDTO.getReceiverId().toString();
+        try {
+            messagingTemplate.convertAndSendToUser(
+                    destinationUser,
+                    MESSAGES_DESTINATION,
+                    messageDTO
+            );
+        } catch (Exception e) {
+            // The message is committed; failing the send now would only make the client retry it
+            log.warn("Failed to push message {} to user {}: {}", messageDTO.getId(), destinationUser, e.getMessage());
+        }
+    }
 
-        return messageDTO;
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
 
     private User resolveUserIfNeeded(User sender) {
@@ -74,97 +210,118 @@ public class MessageService {
         return sender;
     }
 
+    /**
+     * One page of the conversation between two users, oldest first. With afterId the page
+     * holds the messages right after it (catching up) and nextCursor is the next afterId;
+     * otherwise it holds the messages right before beforeId, or the latest ones, and
+     * nextCursor is the next beforeId for scrolling back.
+     */
     @Transactional(readOnly = true)
-    public List<MessageDTO> getMessagesBetweenUsers(Long userId1, Long userId2) {
-        User user1 = userRepository.findById(userId1)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        User user2 = userRepository.findById(userId2)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    public CursorPage<MessageDTO> getMessagesBetweenUsers(Long userId1, Long userId2, Long beforeId, Long afterId, int limit) {
+        if (!userRepository.existsById(userId1) || !userRepository.existsById(userId2)) {
+            throw new RuntimeException("User not found");
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE));
+        // Fetch one extra row to know whether another page exists
+        Pageable window = PageRequest.of(0, pageSize + 1);
+
+        // Each direction is an index range scan; merging two short lists beats an OR plus a sort of the whole thread
+        List<MessageDTO> rows = new ArrayList<>(2 * (pageSize + 1));
+        if (afterId != null) {
+            rows.addAll(messageRepository.findDirectionAfter(userId1, userId2, afterId, window));
+            rows.addAll(messageRepository.findDirectionAfter(userId2, userId1, afterId, window));
+            rows.sort(Comparator.comparing(MessageDTO::getId));
+        } else {
+            long before = beforeId != null ? beforeId : Long.MAX_VALUE;
+            rows.addAll(messageRepository.findDirectionBefore(userId1, userId2, before, window));
+            rows.addAll(messageRepository.findDirectionBefore(userId2, userId1, before, window));
+            rows.sort(Comparator.comparing(MessageDTO::getId).reversed());
+        }
 
-        List<Message> messages = messageRepository.findMessagesBetweenUsers(user1, user2);
-        return messages.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        boolean hasMore = rows.size() > pageSize;
+        List<MessageDTO> page = new ArrayList<>(rows.subList(0, Math.min(pageSize, rows.size())));
+        String nextCursor = hasMore ? page.get(pageSize - 1).getId().toString() : null;
+        if (afterId == null) {
+            Collections.reverse(page);
+        }
+        return CursorPage.of(page, nextCursor);
     }
 
-    @Transactional(readOnly = true)
-    public List<MessageDTO> getChatHistory(User currentUser, Long otherUserId) {
-        User otherUser = userRepository.findById(otherUserId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    public CursorPage<MessageDTO> getChatHistory(User currentUser, Long otherUserId, Long beforeId, Long afterId, int limit) {
+        return getMessagesBetweenUsers(currentUser.getId(), otherUserId, beforeId, afterId, limit);
+    }
 
-        List<Message> messages = messageRepository.findMessagesBetweenUsers(currentUser, otherUser);
-        return messages.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+    // Keeps the customer/admin conversation summary in step; other pairs have no inbox entry
+    private void recordConversation(Message message) {
+        conversationRepository.recordMessage(message.getSender().getId(), message.getReceiver().getId(),
+                message.getId(), Conversation.preview(message.getContent()), message.getCreatedAt());
     }
 
+    /**
+     * The admin's inbox, most recently active conversation first, read from the conversations
+     * summary in one indexed query. Pass nextCursor back as beforeId for the next page.
+     */
+    // The customers' threads with the admin they all write to, whichever admin asks
     @Transactional(readOnly = true)
-    public List<ChatUserDTO> getCustomersWithMessages() {
-        // Get all customers who have sent/received messages with admin
-        List<User> customers = messageRepository.findAllCustomersWithMessages();
-
-        // Get admin user
-        User admin = userRepository.findByRole(User.Role.ADMIN).stream()
-                .findFirst()
-                .orElse(null);
-
-        if (admin == null) {
-            return new ArrayList<>();
+    public CursorPage<ChatUserDTO> getCustomersWithMessages(Long beforeId, int limit) {
+        Optional<ChatAdmin> admin = findChatAdmin();
+        if (admin.isEmpty()) {
+            return CursorPage.of(List.of(), null);
         }
+        int pageSize = Math.max(1, Math.min(limit, MAX_INBOX_PAGE_SIZE));
+        long before = beforeId != null ? beforeId : Long.MAX_VALUE;
 
-        return customers.stream()
-                .map(customer -> {
-                    Long unreadCount = messageRepository.countUnreadMessagesBetweenUsers(customer, admin);
-                    return ChatUserDTO.builder()
-                            .id(customer.getId())
-                            .fullName(customer.getFullName())
-                            .email(customer.getEmail())
-                            .unreadCount(unreadCount)
-                            .build();
-                })
-                .collect(Collectors.toList());
+        // Fetch one extra row to know whether another page exists
+        List<ChatUserDTO> rows = conversationRepository.findInboxPage(admin.get().id(), before, PageRequest.of(0, pageSize + 1));
+        if (rows.size() <= pageSize) {
+            return CursorPage.of(rows, null);
+        }
+        List<ChatUserDTO> page = rows.subList(0, pageSize);
+        return CursorPage.of(page, page.get(pageSize - 1).getLastMessageId().toString());
     }
 
     @Transactional(readOnly = true)
     public ChatUserDTO getAdminChatUser(User customer) {
-        // Get admin user
-        User admin = userRepository.findByRole(User.Role.ADMIN).stream()
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException("Admin not found"));
+        ChatAdmin admin = findChatAdmin().orElseThrow(() -> new RuntimeException("Admin not found"));
 
-        Long unreadCount = messageRepository.countUnreadMessagesBetweenUsers(admin, customer);
+        Long unreadCount = unreadCounterService.getUnreadMessagesFrom(customer.getId(), admin.id());
 
         return ChatUserDTO.builder()
-                .id(admin.getId())
+                .id(admin.id())
                 .fullName("Stitch Admin")
-                .email(admin.getEmail())
+                .email(admin.email())
                 .unreadCount(unreadCount)
                 .build();
     }
 
+    // Customers chat with the first admin, resolved once rather than on every inbox and chat call
+    private Optional<ChatAdmin> findChatAdmin() {
+        return Optional.ofNullable(chatAdminCache.get(CHAT_ADMIN_KEY, key -> userRepository.findByRole(User.Role.ADMIN)
+                .stream()
+                .findFirst()
+                .map(admin -> new ChatAdmin(admin.getId(), admin.getEmail()))
+                .orElse(null)));
+    }
+
+    // Called when an admin's profile changes; other nodes pick the change up within the TTL
+    public void evictChatAdmin() {
+        chatAdminCache.invalidateAll();
+    }
+
+    private record ChatAdmin(Long id, String email) {
+    }
+
     @Transactional
     public void markMessagesAsRead(User sender, User receiver) {
         // Ensure both are managed entities
         User resolvedSender = resolveUserIfNeeded(sender);
         User resolvedReceiver = resolveUserIfNeeded(receiver);
-        messageRepository.markMessagesAsRead(resolvedSender, resolvedReceiver);
+        int marked = messageRepository.markMessagesAsRead(resolvedSender, resolvedReceiver);
+        unreadCounterService.adjustMessages(resolvedReceiver.getId(), resolvedSender.getId(), -marked);
     }
 
-    @Transactional(readOnly = true)
+    // Served from the unread counters; no transaction needed on a cache hit
     public Long getUnreadCount(User user) {
-        return messageRepository.countUnreadMessages(user);
-    }
-
-    private MessageDTO convertToDTO(Message message) {
-        return MessageDTO.builder()
-                .id(message.getId())
-                .senderId(message.getSender().getId())
-                .senderName(message.getSender().getFullName())
-                .receiverId(message.getReceiver().getId())
-                .receiverName(message.getReceiver().getFullName())
-                .content(message.getContent())
-                .isRead(message.getIsRead())
-                .createdAt(message.getCreatedAt())
-                .build();
+        return unreadCounterService.getUnreadMessages(user.getId());
     }
 }
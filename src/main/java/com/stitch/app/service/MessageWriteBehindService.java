@@ -0,0 +1,477 @@
+package com.stitch.app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stitch.app.dto.MessageDTO;
+import com.stitch.app.dto.MessageWriteBehindStats;
+import com.stitch.app.entity.Conversation;
+import com.stitch.app.repository.ConversationRepository;
+import com.stitch.app.repository.MessageRepository;
+import com.stitch.app.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional write-behind buffer for chat messages (messages.write-behind.enabled). A single
+ * flusher thread drains the bounded queue and inserts up to batch-size messages in one
+ * statement once the batch is full or flush-interval-ms after its first message, together
+ * with the unread counters and conversations for the rows it actually inserted. Ids are
+ * taken from the messages sequence in that transaction, as the identity column would, and
+ * a message is pushed to its receiver only after its batch committed, so nobody can read
+ * (or mark read) a message whose row does not exist yet.
+ *
+ * The ack mode is the durability knob: "queued" acknowledges as soon as the message is in
+ * the buffer, without an id, so a crash loses what was not flushed yet; "persisted" makes
+ * the sender wait for the commit of its batch (group commit) and returns the stored message.
+ * Sends with a clientMessageId are stored at most once: a retry is answered with the
+ * original message, found in the recent-keys cache or else in the database, and never
+ * pushed again; the unique index catches retries racing on other nodes.
+ */
+@Service
+public class MessageWriteBehindService {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageWriteBehindService.class);
+
+    private static final String NEXT_IDS_SQL =
+            "SELECT nextval(pg_get_serial_sequence('messages', 'id')) FROM generate_series(1, ?)";
+
+    // Rows for users deleted in the meantime are skipped instead of failing the whole batch
+    private static final String INSERT_SQL =
+            "INSERT INTO messages (id, sender_id, receiver_id, content, is_read, created_at, client_message_id) " +
+            "SELECT t.id, t.sender_id, t.receiver_id, t.content, false, t.created_at, t.client_message_id " +
+            "FROM unnest(?, ?, ?, ?, ?, ?) AS t(id, sender_id, receiver_id, content, created_at, client_message_id) " +
+            "WHERE EXISTS (SELECT 1 FROM users u WHERE u.id = t.sender_id) " +
+            "AND EXISTS (SELECT 1 FROM users u WHERE u.id = t.receiver_id) " +
+            "ON CONFLICT (sender_id, client_message_id) DO NOTHING " +
+            "RETURNING id";
+
+    public enum AckMode { QUEUED, PERSISTED }
+
+    // The message as accepted (no id yet), completed with the stored message once flushed
+    private record PendingMessage(MessageDTO message, CompletableFuture<MessageDTO> stored) {
+    }
+
+    // What a flush did with one message: stored is null when it was dropped
+    private record Outcome(MessageDTO stored, boolean inserted) {
+    }
+
+    private record ChatPair(Long senderId, Long receiverId) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UnreadCounterService unreadCounterService;
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final UserRepository userRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final boolean enabled;
+    private final AckMode ackMode;
+    private final BlockingQueue<PendingMessage> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final long persistTimeoutMs;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final Cache<String, PendingMessage> recentKeys;
+    // Receivers known to exist; the admin everybody writes to is checked once per window
+    private final Cache<Long, Boolean> knownReceivers;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong totalBatchNanos = new AtomicLong();
+    private final AtomicLong maxBatchNanos = new AtomicLong();
+
+    public MessageWriteBehindService(JdbcTemplate jdbcTemplate,
+                                     TransactionTemplate transactionTemplate,
+                                     UnreadCounterService unreadCounterService,
+                                     ConversationRepository conversationRepository,
+                                     MessageRepository messageRepository,
+                                     UserRepository userRepository,
+                                     SimpMessagingTemplate messagingTemplate,
+                                     @Value("${messages.write-behind.enabled:false}") boolean enabled,
+                                     @Value("${messages.write-behind.ack:queued}") String ackMode,
+                                     @Value("${messages.write-behind.queue-capacity:10000}") int queueCapacity,
+                                     @Value("${messages.write-behind.batch-size:500}") int batchSize,
+                                     @Value("${messages.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+                                     @Value("${messages.write-behind.offer-timeout-ms:100}") long offerTimeoutMs,
+                                     @Value("${messages.write-behind.persist-timeout-ms:5000}") long persistTimeoutMs,
+                                     @Value("${messages.write-behind.max-attempts:5}") int maxAttempts,
+                                     @Value("${messages.write-behind.initial-backoff-ms:100}") long initialBackoffMs,
+                                     @Value("${messages.write-behind.dedup-window-seconds:600}") long dedupWindowSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.unreadCounterService = unreadCounterService;
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.userRepository = userRepository;
+        this.messagingTemplate = messagingTemplate;
+        this.enabled = enabled;
+        try {
+            this.ackMode = AckMode.valueOf(ackMode.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("messages.write-behind.ack must be 'queued' or 'persisted', got '" + ackMode + "'");
+        }
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.persistTimeoutMs = persistTimeoutMs;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.recentKeys = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(dedupWindowSeconds))
+                .maximumSize(Math.max(queueCapacity, 10000))
+                .build();
+        this.knownReceivers = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(dedupWindowSeconds))
+                .maximumSize(10000)
+                .build();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        flusher = Thread.ofPlatform().daemon(true).name("message-write-behind").start(this::runFlusher);
+        log.info("Message write-behind started: ack {}, batch size {}, flush interval {} ms, queue capacity {}",
+                ackMode.name().toLowerCase(Locale.ROOT), batchSize, flushIntervalMs, queue.remainingCapacity());
+    }
+
+    // Whatever is still buffered is flushed before the data source goes away
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+        List<PendingMessage> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += batchSize) {
+            flushWithRetry(rest.subList(from, Math.min(from + batchSize, rest.size())));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Buffers a message. In queued mode the accepted message (without id) comes back at once;
+     * in persisted mode the stored one once its batch committed. A retry of an earlier send
+     * returns that send's message. Returns null when the buffer stayed full for the whole
+     * offer timeout (or is shut down); the caller then stores the message directly.
+     */
+    public MessageDTO submit(Long senderId, String senderName, Long receiverId, String content, String clientMessageId) {
+        if (!running) {
+            return null;
+        }
+        String key = clientMessageId != null ? senderId + ":" + clientMessageId : null;
+        if (key != null) {
+            PendingMessage earlier = recentKeys.getIfPresent(key);
+            if (earlier != null) {
+                duplicates.incrementAndGet();
+                return resultOf(earlier);
+            }
+            // Not seen here lately, but it may have been stored long ago or by another node
+            Optional<MessageDTO> stored = messageRepository.findByClientMessageId(senderId, clientMessageId);
+            if (stored.isPresent()) {
+                duplicates.incrementAndGet();
+                return stored.get();
+            }
+        }
+        requireReceiver(receiverId);
+
+        MessageDTO message = MessageDTO.builder()
+                .senderId(senderId)
+                .senderName(senderName)
+                .receiverId(receiverId)
+                .content(content)
+                .isRead(false)
+                .createdAt(LocalDateTime.now())
+                .clientMessageId(clientMessageId)
+                .build();
+        PendingMessage pending = new PendingMessage(message, new CompletableFuture<>());
+        if (key != null) {
+            PendingMessage earlier = recentKeys.asMap().putIfAbsent(key, pending);
+            if (earlier != null) {
+                duplicates.incrementAndGet();
+                return resultOf(earlier);
+            }
+        }
+
+        boolean queued = false;
+        try {
+            queued = queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queued) {
+            if (key != null) {
+                recentKeys.asMap().remove(key, pending);
+            }
+            rejected.incrementAndGet();
+            return null;
+        }
+        accepted.incrementAndGet();
+        return resultOf(pending);
+    }
+
+    public MessageWriteBehindStats getStats() {
+        long batchCount = batches.get();
+        return MessageWriteBehindStats.builder()
+                .enabled(enabled)
+                .ackMode(ackMode.name().toLowerCase(Locale.ROOT))
+                .queueDepth(queue.size())
+                .remainingCapacity(queue.remainingCapacity())
+                .accepted(accepted.get())
+                .persisted(persisted.get())
+                .duplicates(duplicates.get())
+                .dropped(dropped.get())
+                .rejected(rejected.get())
+                .failed(failed.get())
+                .retried(retried.get())
+                .batches(batchCount)
+                .avgBatchFlushMillis(batchCount == 0 ? 0 : totalBatchNanos.get() / (double) batchCount / 1_000_000)
+                .maxBatchFlushMillis(maxBatchNanos.get() / 1_000_000.0)
+                .build();
+    }
+
+    // Same answer the synchronous path gives, without a lookup per message
+    private void requireReceiver(Long receiverId) {
+        if (knownReceivers.getIfPresent(receiverId) != null) {
+            return;
+        }
+        if (!userRepository.existsById(receiverId)) {
+            throw new RuntimeException("Receiver not found");
+        }
+        knownReceivers.put(receiverId, Boolean.TRUE);
+    }
+
+    private MessageDTO resultOf(PendingMessage pending) {
+        CompletableFuture<MessageDTO> stored = pending.stored();
+        if (ackMode == AckMode.QUEUED) {
+            return stored.isDone() && !stored.isCompletedExceptionally() ? stored.join() : pending.message();
+        }
+        try {
+            return stored.get(persistTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while saving message");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause && !(cause instanceof DataAccessException)) {
+                throw cause;
+            }
+            throw new RuntimeException("Message could not be saved, please retry");
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Message could not be saved, please retry");
+        }
+    }
+
+    private void runFlusher() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PendingMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Fill the batch until it is full or the interval since its first message is over
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flushWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Unexpected error in message write-behind: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flushWithRetry(List<PendingMessage> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                List<Outcome> outcomes = timedFlush(batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    complete(batch.get(i), outcomes.get(i));
+                }
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    failed.addAndGet(batch.size());
+                    log.error("Giving up on {} buffered messages after {} attempts: {}", batch.size(), attempt, e.getMessage());
+                    batch.forEach(pending -> pending.stored().completeExceptionally(e));
+                    return;
+                }
+                retried.addAndGet(batch.size());
+                long delay = initialBackoffMs * (1L << (attempt - 1));
+                log.warn("Failed to flush {} buffered messages (attempt {}/{}), retrying in {} ms: {}",
+                        batch.size(), attempt, maxAttempts, delay, e.getMessage());
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    // Runs after the batch committed: only now may receivers see (and read) the messages
+    private void complete(PendingMessage pending, Outcome outcome) {
+        if (outcome.stored() == null) {
+            dropped.incrementAndGet();
+            pending.stored().completeExceptionally(new RuntimeException("Receiver not found"));
+            return;
+        }
+        if (outcome.inserted()) {
+            persisted.incrementAndGet();
+            try {
+                messagingTemplate.convertAndSendToUser(outcome.stored().getReceiverId().toString(),
+                        MessageService.MESSAGES_DESTINATION, outcome.stored());
+            } catch (RuntimeException e) {
+                // The message is stored; the receiver picks it up from history
+                log.warn("Failed to push message {}: {}", outcome.stored().getId(), e.getMessage());
+            }
+        } else {
+            duplicates.incrementAndGet();
+        }
+        pending.stored().complete(outcome.stored());
+    }
+
+    private List<Outcome> timedFlush(List<PendingMessage> batch) {
+        long start = System.nanoTime();
+        try {
+            return transactionTemplate.execute(status -> flush(batch));
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            batches.incrementAndGet();
+            totalBatchNanos.addAndGet(elapsed);
+            maxBatchNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    private List<Outcome> flush(List<PendingMessage> batch) {
+        int size = batch.size();
+        // Ids are taken right before the insert, in the same transaction, like identity values
+        List<Long> ids = jdbcTemplate.queryForList(NEXT_IDS_SQL, Long.class, size);
+        Long[] idArray = ids.toArray(new Long[0]);
+        Long[] senderIds = new Long[size];
+        Long[] receiverIds = new Long[size];
+        String[] contents = new String[size];
+        Timestamp[] createdAts = new Timestamp[size];
+        String[] clientMessageIds = new String[size];
+        for (int i = 0; i < size; i++) {
+            MessageDTO message = batch.get(i).message();
+            senderIds[i] = message.getSenderId();
+            receiverIds[i] = message.getReceiverId();
+            contents[i] = message.getContent();
+            createdAts[i] = Timestamp.valueOf(message.getCreatedAt());
+            clientMessageIds[i] = message.getClientMessageId();
+        }
+
+        Set<Long> inserted = new HashSet<>(jdbcTemplate.query(INSERT_SQL, ps -> {
+            Connection connection = ps.getConnection();
+            ps.setArray(1, connection.createArrayOf("bigint", idArray));
+            ps.setArray(2, connection.createArrayOf("bigint", senderIds));
+            ps.setArray(3, connection.createArrayOf("bigint", receiverIds));
+            ps.setArray(4, connection.createArrayOf("text", contents));
+            ps.setArray(5, connection.createArrayOf("timestamp", createdAts));
+            ps.setArray(6, connection.createArrayOf("varchar", clientMessageIds));
+        }, (rs, rowNum) -> rs.getLong(1)));
+
+        // Counters and inbox entries only for rows that really went in, once per conversation
+        List<Outcome> outcomes = new ArrayList<>(size);
+        Map<Long, Map<Long, Long>> unread = new HashMap<>();
+        // Sorted by conversation (both directions share a row), so concurrent flushes lock rows in one order
+        Map<ChatPair, MessageDTO> latest = new TreeMap<>(Comparator
+                .comparing((ChatPair pair) -> Math.min(pair.senderId(), pair.receiverId()))
+                .thenComparing(pair -> Math.max(pair.senderId(), pair.receiverId()))
+                .thenComparing(ChatPair::senderId));
+        for (int i = 0; i < size; i++) {
+            MessageDTO message = batch.get(i).message();
+            if (!inserted.contains(ids.get(i))) {
+                // A retry stored earlier under its key (answered with that message), or a user deleted meanwhile
+                MessageDTO earlier = message.getClientMessageId() == null ? null
+                        : messageRepository.findByClientMessageId(message.getSenderId(), message.getClientMessageId()).orElse(null);
+                outcomes.add(new Outcome(earlier, false));
+                continue;
+            }
+            MessageDTO stored = withId(message, ids.get(i));
+            outcomes.add(new Outcome(stored, true));
+            ChatPair pair = new ChatPair(message.getSenderId(), message.getReceiverId());
+            unread.computeIfAbsent(pair.receiverId(), receiverId -> new HashMap<>()).merge(pair.senderId(), 1L, Long::sum);
+            latest.put(pair, stored);
+        }
+        unreadCounterService.adjustMessages(unread);
+        latest.forEach((pair, message) -> conversationRepository.recordMessage(pair.senderId(), pair.receiverId(),
+                message.getId(), Conversation.preview(message.getContent()), message.getCreatedAt()));
+        return outcomes;
+    }
+
+    private static MessageDTO withId(MessageDTO message, Long id) {
+        return MessageDTO.builder()
+                .id(id)
+                .senderId(message.getSenderId())
+                .senderName(message.getSenderName())
+                .receiverId(message.getReceiverId())
+                .content(message.getContent())
+                .isRead(message.getIsRead())
+                .createdAt(message.getCreatedAt())
+                .clientMessageId(message.getClientMessageId())
+                .build();
+    }
+}
@@ -0,0 +1,162 @@
+package com.stitch.app.service;
+
+import com.stitch.app.dto.NotificationDTO;
+import com.stitch.app.entity.Notification;
+import com.stitch.app.entity.User;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk notification delivery for broadcasts (all admins, all customers).
+ * Recipients are streamed from the users table, notification rows are written
+ * with JDBC batch inserts chunk by chunk, and the WebSocket push and emails
+ * are only handed off after the surrounding transaction commits.
+ */
+@Service
+@RequiredArgsConstructor
+public class NotificationFanoutService {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationFanoutService.class);
+
+    private static final String SELECT_RECIPIENTS_SQL =
+            "SELECT id, email FROM users WHERE role = ? ORDER BY id";
+
+    private static final String SELECT_RECIPIENT_BY_ID_SQL =
+            "SELECT id, email FROM users WHERE id = ?";
+
+    private static final String INSERT_NOTIFICATION_SQL =
+            "INSERT INTO notifications (user_id, appointment_id, title, message, type, is_read, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, false, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MailDispatchService mailDispatchService;
+    private final NotificationPublisher notificationPublisher;
+    private final UnreadCounterService unreadCounterService;
+
+    @Value("${notification.fanout.batch-size:500}")
+    private int batchSize;
+
+    @Transactional
+    public int notifyRole(User.Role role, Long appointmentId, String title, String message,
+                          Notification.NotificationType type) {
+        NotificationPayload payload = new NotificationPayload(appointmentId, title, message, type, LocalDateTime.now());
+        List<Recipient> chunk = new ArrayList<>(batchSize);
+        int[] delivered = {0};
+
+        // Stream recipients with a server-side cursor instead of materializing every User entity
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(SELECT_RECIPIENTS_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(batchSize);
+            ps.setString(1, role.name());
+            return ps;
+        }, (ResultSet rs) -> {
+            chunk.add(new Recipient(rs.getLong("id"), rs.getString("email")));
+            if (chunk.size() >= batchSize) {
+                delivered[0] += deliver(chunk, payload);
+                chunk.clear();
+            }
+        });
+
+        if (!chunk.isEmpty()) {
+            delivered[0] += deliver(chunk, payload);
+        }
+
+        log.debug("Fanned out '{}' to {} {} recipients", title, delivered[0], role);
+        return delivered[0];
+    }
+
+    @Transactional
+    public int notifyRole(User.Role role, String title, String message, Notification.NotificationType type) {
+        return notifyRole(role, null, title, message, type);
+    }
+
+    // Single-recipient variant of the same write path; returns false if the user no longer exists
+    @Transactional
+    public boolean notifyUser(Long userId, Long appointmentId, String title, String message,
+                              Notification.NotificationType type) {
+        List<Recipient> recipients = jdbcTemplate.query(SELECT_RECIPIENT_BY_ID_SQL,
+                (rs, rowNum) -> new Recipient(rs.getLong("id"), rs.getString("email")), userId);
+        if (recipients.isEmpty()) {
+            log.warn("Skipping notification '{}' for missing user {}", title, userId);
+            return false;
+        }
+        deliver(recipients, new NotificationPayload(appointmentId, title, message, type, LocalDateTime.now()));
+        return true;
+    }
+
+    private int deliver(List<Recipient> recipients, NotificationPayload payload) {
+        Timestamp createdAt = Timestamp.valueOf(payload.createdAt());
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                con -> con.prepareStatement(INSERT_NOTIFICATION_SQL, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setLong(1, recipients.get(i).id());
+                        if (payload.appointmentId() != null) {
+                            ps.setLong(2, payload.appointmentId());
+                        } else {
+                            ps.setNull(2, Types.BIGINT);
+                        }
+                        ps.setString(3, payload.title());
+                        ps.setString(4, payload.message());
+                        ps.setString(5, payload.type().name());
+                        ps.setTimestamp(6, createdAt);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return recipients.size();
+                    }
+                },
+                keyHolder);
+
+        // Generated keys come back in batch order, one per recipient
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        List<NotificationDTO> created = new ArrayList<>(recipients.size());
+        for (int i = 0; i < recipients.size(); i++) {
+            created.add(NotificationDTO.builder()
+                    .id(((Number) keys.get(i).get("id")).longValue())
+                    .userId(recipients.get(i).id())
+                    .appointmentId(payload.appointmentId())
+                    .title(payload.title())
+                    .message(payload.message())
+                    .type(payload.type().name())
+                    .isRead(false)
+                    .createdAt(payload.createdAt())
+                    .build());
+        }
+        unreadCounterService.incrementNotifications(recipients.stream().map(Recipient::id).toList());
+        notificationPublisher.publishAfterCommit(created);
+
+        List<String> emails = recipients.stream().map(Recipient::email).toList();
+        mailDispatchService.enqueueAfterCommit(emails, payload.title(), payload.message());
+        return recipients.size();
+    }
+
+    private record Recipient(long id, String email) {
+    }
+
+    private record NotificationPayload(Long appointmentId, String title, String message,
+                                       Notification.NotificationType type, LocalDateTime createdAt) {
+    }
+}
@@ -0,0 +1,95 @@
+package com.stitch.app.service;
+
+import com.stitch.app.entity.NotificationOutboxEvent;
+import com.stitch.app.repository.NotificationOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Drains notification_outbox in batches: creates the Notification rows, and
+ * (after commit) pushes them over WebSocket and queues the emails. A failing
+ * batch is retried event by event so one bad row can not block the rest;
+ * events that keep failing stay in the table after max-attempts for inspection.
+ */
+@Component
+@RequiredArgsConstructor
+public class NotificationOutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationOutboxRelay.class);
+
+    private final NotificationOutboxRepository outboxRepository;
+    private final NotificationFanoutService notificationFanoutService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${notification.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${notification.outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Scheduled(fixedDelayString = "${notification.outbox.poll-interval-ms:1000}")
+    public void relay() {
+        int processed;
+        do {
+            processed = relayBatch();
+        } while (processed == batchSize);
+    }
+
+    private int relayBatch() {
+        List<Long> ids;
+        try {
+            ids = transactionTemplate.execute(status -> {
+                List<NotificationOutboxEvent> events = outboxRepository.lockNextBatch(batchSize, maxAttempts);
+                events.forEach(this::dispatch);
+                outboxRepository.deleteAllInBatch(events);
+                return events.stream().map(NotificationOutboxEvent::getId).toList();
+            });
+        } catch (Exception e) {
+            log.warn("Outbox batch failed, retrying events one by one: {}", e.getMessage());
+            return relayIndividually();
+        }
+        return ids == null ? 0 : ids.size();
+    }
+
+    private int relayIndividually() {
+        List<Long> ids = transactionTemplate.execute(status ->
+                outboxRepository.lockNextBatch(batchSize, maxAttempts).stream()
+                        .map(NotificationOutboxEvent::getId)
+                        .toList());
+        if (ids == null) {
+            return 0;
+        }
+
+        for (Long id : ids) {
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        outboxRepository.lockById(id).ifPresent(event -> {
+                            dispatch(event);
+                            outboxRepository.delete(event);
+                        }));
+            } catch (Exception e) {
+                log.error("Failed to relay outbox event {}: {}", id, e.getMessage());
+                transactionTemplate.executeWithoutResult(status -> outboxRepository.recordFailure(id, e.getMessage()));
+            }
+        }
+        // Report a short batch so relay() waits for the next tick instead of spinning on failures
+        return 0;
+    }
+
+    private void dispatch(NotificationOutboxEvent event) {
+        if (event.getRecipientRole() != null) {
+            notificationFanoutService.notifyRole(event.getRecipientRole(), event.getAppointmentId(),
+                    event.getTitle(), event.getMessage(), event.getType());
+        } else {
+            notificationFanoutService.notifyUser(event.getRecipientId(), event.getAppointmentId(),
+                    event.getTitle(), event.getMessage(), event.getType());
+        }
+    }
+}
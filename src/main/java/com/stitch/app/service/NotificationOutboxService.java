@@ -0,0 +1,50 @@
+package com.stitch.app.service;
+
+import com.stitch.app.entity.Notification;
+import com.stitch.app.entity.NotificationOutboxEvent;
+import com.stitch.app.entity.User;
+import com.stitch.app.repository.NotificationOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Records notifications to be delivered out of band. Must be called inside the
+ * business transaction so the outbox row commits (or rolls back) with it.
+ */
+@Service
+@RequiredArgsConstructor
+public class NotificationOutboxService {
+
+    private final NotificationOutboxRepository outboxRepository;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueForUser(Long userId, Long appointmentId, String title, String message,
+                               Notification.NotificationType type) {
+        outboxRepository.save(NotificationOutboxEvent.builder()
+                .recipientId(userId)
+                .appointmentId(appointmentId)
+                .title(title)
+                .message(message)
+                .type(type)
+                .build());
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueForRole(User.Role role, Long appointmentId, String title, String message,
+                               Notification.NotificationType type) {
+        outboxRepository.save(NotificationOutboxEvent.builder()
+                .recipientRole(role)
+                .appointmentId(appointmentId)
+                .title(title)
+                .message(message)
+                .type(type)
+                .build());
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void discardForAppointment(Long appointmentId) {
+        outboxRepository.deleteByAppointmentId(appointmentId);
+    }
+}
@@ -0,0 +1,87 @@
+package com.stitch.app.service;
+
+import com.stitch.app.dto.NotificationDTO;
+import com.stitch.app.dto.NotificationUnreadDelta;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pushes newly created notifications to their recipients over STOMP.
+ * Clients subscribe to /user/queue/notifications (user destinations are keyed by user id).
+ * The "event" header tells the payloads apart: "notification" carries a NotificationDTO,
+ * "unread-delta" a NotificationUnreadDelta. After a reconnect, clients catch up through
+ * GET /api/notifications/since with the last id they saw.
+ */
+@Component
+@RequiredArgsConstructor
+public class NotificationPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationPublisher.class);
+
+    public static final String NOTIFICATIONS_DESTINATION = "/queue/notifications";
+
+    public static final String EVENT_HEADER = "event";
+    public static final String NOTIFICATION_EVENT = "notification";
+    public static final String UNREAD_DELTA_EVENT = "unread-delta";
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    // Only publish once the rows are committed, so clients never see a notification that was rolled back
+    public void publishAfterCommit(List<NotificationDTO> notifications) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> publish(notifications));
+    }
+
+    public void publishUnreadDeltaAfterCommit(Long userId, long delta, long unreadCount) {
+        if (delta == 0) {
+            return;
+        }
+        afterCommit(() -> publishUnreadDelta(userId, delta, unreadCount));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void publish(List<NotificationDTO> notifications) {
+        for (NotificationDTO notification : notifications) {
+            try {
+                messagingTemplate.convertAndSendToUser(
+                        notification.getUserId().toString(), NOTIFICATIONS_DESTINATION, notification,
+                        Map.of(EVENT_HEADER, NOTIFICATION_EVENT));
+            } catch (Exception e) {
+                // A push failure must not affect the already committed notification
+                log.warn("Failed to push notification {} to user {}: {}",
+                        notification.getId(), notification.getUserId(), e.getMessage());
+            }
+        }
+    }
+
+    private void publishUnreadDelta(Long userId, long delta, long unreadCount) {
+        try {
+            messagingTemplate.convertAndSendToUser(userId.toString(), NOTIFICATIONS_DESTINATION,
+                    new NotificationUnreadDelta(userId, delta, unreadCount), Map.of(EVENT_HEADER, UNREAD_DELTA_EVENT));
+        } catch (Exception e) {
+            log.warn("Failed to push unread delta {} to user {}: {}", delta, userId, e.getMessage());
+        }
+    }
+}
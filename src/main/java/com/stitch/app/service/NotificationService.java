@@ -1,31 +1,36 @@
 package com.stitch.app.service;
 
+import com.stitch.app.dto.CursorPage;
+import com.stitch.app.dto.MarkAllReadResponse;
+import com.stitch.app.dto.NotificationDTO;
 import com.stitch.app.entity.Appointment;
 import com.stitch.app.entity.Notification;
 import com.stitch.app.entity.User;
 import com.stitch.app.repository.NotificationRepository;
 import lombok.RequiredArgsConstructor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class NotificationService {
 
-    private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
-
     private final NotificationRepository notificationRepository;
+    private final MailDispatchService mailDispatchService;
+    private final NotificationPublisher notificationPublisher;
+    private final UnreadCounterService unreadCounterService;
+
+    private static final int MAX_CATCH_UP_PAGE_SIZE = 500;
 
-    @Autowired(required = false)
-    private JavaMailSender mailSender;
+    // How much earlier than the client's last notification a lower id may still have been created
+    // and not yet committed; covers the longest notification transaction, i.e. a large fan-out
+    @Value("${notification.catch-up.overlap-seconds:120}")
+    private long catchUpOverlapSeconds;
 
     @Transactional
     public Notification createNotification(User user, Appointment appointment,
@@ -41,7 +46,9 @@ public class NotificationService {
                 .build();
 
         notification = notificationRepository.save(notification);
-        sendEmailNotification(user.getEmail(), title, message);
+        unreadCounterService.adjustNotifications(user.getId(), 1);
+        notificationPublisher.publishAfterCommit(List.of(NotificationDTO.fromEntity(notification)));
+        mailDispatchService.enqueueAfterCommit(List.of(user.getEmail()), title, message);
 
         return notification;
     }
@@ -52,25 +59,9 @@ public class NotificationService {
         return createNotification(user, null, title, message, type);
     }
 
-    @Async
+    // Hands the email to the background mail pipeline; never blocks on SMTP
     public void sendEmailNotification(String to, String subject, String text) {
-        if (mailSender == null) {
-            log.info("MailSender not configured - skipping email to {}", to);
-            return;
-        }
-
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(to);
-        message.setSubject(subject);
-        message.setText(text);
-        message.setFrom("noreply@stitch.com");
-
-        try {
-            mailSender.send(message);
-        } catch (Exception e) {
-            // Log error
-            log.error("Failed to send email to {}: {}", to, e.getMessage());
-        }
+        mailDispatchService.enqueue(to, subject, text);
     }
 
     public List<Notification> getUserNotifications(Long userId) {
@@ -81,18 +72,80 @@ public class NotificationService {
         return notificationRepository.findByUserIdAndIsReadFalseOrderByCreatedAtDesc(userId);
     }
 
+    public long getUnreadCount(Long userId) {
+        return unreadCounterService.getUnreadNotifications(userId);
+    }
+
+    // Removes an appointment's notifications, taking the unread ones off their owners' counters
+    @Transactional
+    public void deleteForAppointment(Long appointmentId) {
+        for (Object[] row : notificationRepository.countUnreadByUserForAppointment(appointmentId)) {
+            unreadCounterService.adjustNotifications((Long) row[0], -((Long) row[1]));
+        }
+        notificationRepository.deleteByAppointmentId(appointmentId);
+    }
+
+    /**
+     * Notifications created after lastId, oldest first. Clients call this after (re)connecting
+     * with the highest id they have seen and then rely on the STOMP push; nextCursor is the
+     * lastId for the following page.
+     * <p>
+     * Ids are handed out at insert time but become visible at commit, so a lower id can commit
+     * after lastId was already delivered (a long fan-out, say). Each call therefore also returns
+     * the user's notifications below lastId created up to catch-up overlap before it; clients
+     * drop ids they already hold.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<NotificationDTO> getNotificationsSince(Long userId, long lastId, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_CATCH_UP_PAGE_SIZE));
+
+        List<NotificationDTO> lateArrivals = notificationRepository.findCreatedAtByUserIdAndId(userId, lastId)
+                .map(lastCreatedAt -> notificationRepository.findByUserIdAndIdLessThanAndCreatedAtGreaterThanEqualOrderByIdAsc(
+                        userId, lastId, lastCreatedAt.minusSeconds(catchUpOverlapSeconds), PageRequest.of(0, MAX_CATCH_UP_PAGE_SIZE)))
+                .orElse(List.of())
+                .stream()
+                .map(NotificationDTO::fromEntity)
+                .toList();
+
+        // Fetch one extra row to know whether another page exists
+        List<NotificationDTO> rows = notificationRepository
+                .findByUserIdAndIdGreaterThanOrderByIdAsc(userId, lastId, PageRequest.of(0, pageSize + 1))
+                .stream()
+                .map(NotificationDTO::fromEntity)
+                .toList();
+        List<NotificationDTO> page = rows.size() <= pageSize ? rows : rows.subList(0, pageSize);
+        String nextCursor = rows.size() <= pageSize ? null : page.get(pageSize - 1).getId().toString();
+        if (lateArrivals.isEmpty()) {
+            return CursorPage.of(page, nextCursor);
+        }
+        List<NotificationDTO> items = new ArrayList<>(lateArrivals.size() + page.size());
+        items.addAll(lateArrivals);
+        items.addAll(page);
+        return CursorPage.of(items, nextCursor);
+    }
+
     @Transactional
     public void markAsRead(Long notificationId) {
         notificationRepository.findById(notificationId).ifPresent(notification -> {
-            notification.setIsRead(true);
-            notificationRepository.save(notification);
+            if (notificationRepository.markAsReadIfUnread(notificationId) > 0) {
+                Long userId = notification.getUser().getId();
+                long unreadCount = unreadCounterService.adjustNotifications(userId, -1);
+                notificationPublisher.publishUnreadDeltaAfterCommit(userId, -1, unreadCount);
+            }
         });
     }
 
+    /**
+     * Marks the user's notifications read with a single UPDATE. Only ids up to upToId are
+     * touched, so anything that arrives while the request runs stays unread; without a
+     * watermark from the client, the newest id at the start of the call is used.
+     */
     @Transactional
-    public void markAllAsRead(Long userId) {
-        List<Notification> notifications = notificationRepository.findByUserIdAndIsReadFalse(userId);
-        notifications.forEach(n -> n.setIsRead(true));
-        notificationRepository.saveAll(notifications);
+    public MarkAllReadResponse markAllAsRead(Long userId, Long upToId) {
+        Long watermark = upToId != null ? upToId : notificationRepository.findMaxIdByUserId(userId).orElse(0L);
+        int updated = notificationRepository.markAllAsRead(userId, watermark);
+        long unreadCount = unreadCounterService.adjustNotifications(userId, -updated);
+        notificationPublisher.publishUnreadDeltaAfterCommit(userId, -updated, unreadCount);
+        return new MarkAllReadResponse(updated, watermark, unreadCount);
     }
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+package com.stitch.app.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * BlobStore on an S3-compatible bucket (AWS S3, MinIO, ...). Large files are sent as
+ * multipart uploads, part by part from the staged file, and downloads are served through
+ * pre-signed GET URLs so the bytes never pass through the application.
+ */
+public class S3BlobStore implements BlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(S3BlobStore.class);
+
+    private final S3Client s3;
+    private final S3Presigner presigner;
+    private final String bucket;
+    private final String keyPrefix;
+    private final long multipartThresholdBytes;
+    private final int partSizeBytes;
+
+    public S3BlobStore(S3Client s3, S3Presigner presigner, String bucket, String keyPrefix,
+                       long multipartThresholdBytes, int partSizeBytes) {
+        this.s3 = s3;
+        this.presigner = presigner;
+        this.bucket = bucket;
+        this.keyPrefix = keyPrefix == null ? "" : keyPrefix;
+        this.multipartThresholdBytes = multipartThresholdBytes;
+        // S3 rejects parts below 5 MiB (except the last one)
+        this.partSizeBytes = Math.max(partSizeBytes, 5 * 1024 * 1024);
+    }
+
+    // For local stand-ins: creates the bucket on startup if it does not exist yet
+    public void createBucketIfMissing() {
+        try {
+            s3.headBucket(b -> b.bucket(bucket));
+        } catch (NoSuchBucketException e) {
+            s3.createBucket(b -> b.bucket(bucket));
+            log.info("Created bucket {}", bucket);
+        } catch (S3Exception e) {
+            if (e.statusCode() != 404) {
+                throw e;
+            }
+            s3.createBucket(b -> b.bucket(bucket));
+            log.info("Created bucket {}", bucket);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        presigner.close();
+        s3.close();
+    }
+
+    @Override
+    public void put(String name, Path source, String contentType) throws IOException {
+        try {
+            long size = Files.size(source);
+            if (size < multipartThresholdBytes) {
+                s3.putObject(b -> b.bucket(bucket).key(key(name)).contentType(contentType), RequestBody.fromFile(source));
+            } else {
+                putMultipart(name, source, contentType, size);
+            }
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    private void putMultipart(String name, Path source, String contentType, long size) throws IOException {
+        String key = key(name);
+        String uploadId = s3.createMultipartUpload(b -> b.bucket(bucket).key(key).contentType(contentType)).uploadId();
+        try (InputStream in = Files.newInputStream(source)) {
+            List<CompletedPart> parts = new ArrayList<>();
+            byte[] buffer = new byte[partSizeBytes];
+            int partNumber = 1;
+            for (long offset = 0; offset < size; offset += partSizeBytes, partNumber++) {
+                int length = in.readNBytes(buffer, 0, (int) Math.min(partSizeBytes, size - offset));
+                int number = partNumber;
+                String etag = s3.uploadPart(b -> b.bucket(bucket).key(key).uploadId(uploadId).partNumber(number),
+                        RequestBody.fromBytes(length == buffer.length ? buffer : Arrays.copyOf(buffer, length))).eTag();
+                parts.add(CompletedPart.builder().partNumber(number).eTag(etag).build());
+            }
+            s3.completeMultipartUpload(b -> b.bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(m -> m.parts(parts)));
+        } catch (IOException | RuntimeException e) {
+            // Otherwise the uploaded parts are kept (and billed) until a lifecycle rule removes them
+            try {
+                s3.abortMultipartUpload(b -> b.bucket(bucket).key(key).uploadId(uploadId));
+            } catch (RuntimeException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean exists(String name) {
+        try {
+            s3.headObject(b -> b.bucket(bucket).key(key(name)));
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean delete(String name) {
+        // S3 deletes are idempotent and do not say whether the key existed
+        s3.deleteObject(b -> b.bucket(bucket).key(key(name)));
+        return true;
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        try {
+            return s3.getObject(b -> b.bucket(bucket).key(key(name)));
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(name);
+        }
+    }
+
+    @Override
+    public Optional<Path> localPath(String name) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<URI> presignedGetUrl(String name, Duration ttl, String contentType, String contentDisposition) {
+        try {
+            return Optional.of(presigner.presignGetObject(p -> p
+                    .signatureDuration(ttl)
+                    .getObjectRequest(b -> b.bucket(bucket).key(key(name))
+                            .responseContentType(contentType)
+                            .responseContentDisposition(contentDisposition)))
+                    .url().toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Invalid pre-signed URL for " + name, e);
+        }
+    }
+
+    private String key(String name) {
+        return keyPrefix + name;
+    }
+}
@@ -0,0 +1,85 @@
+package com.stitch.app.service;
+
+import com.stitch.app.repository.StoredBlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Reference counting for content-addressed uploads. References are added and released in
+ * the caller's transaction when there is one, otherwise in a transaction of their own.
+ * Appointment images are ingested before the appointment transaction opens, so their
+ * references commit on their own; if that transaction then fails, ImageIngestionService
+ * .discard releases them again. Files are only written or removed while holding the
+ * blob's advisory lock; removal happens after commit, once the count is known to be zero.
+ */
+@Service
+public class StoredBlobService {
+
+    private static final Logger log = LoggerFactory.getLogger(StoredBlobService.class);
+
+    private final StoredBlobRepository storedBlobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate purgeTransactionTemplate;
+
+    public StoredBlobService(StoredBlobRepository storedBlobRepository, PlatformTransactionManager transactionManager) {
+        this.storedBlobRepository = storedBlobRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Purges run after the caller's commit, so they need a transaction of their own
+        this.purgeTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.purgeTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Adds a reference to the blob and runs writeIfMissing under the blob lock. The supplier
+     * should put the file in place if it is not on disk yet and report whether it wrote it.
+     */
+    public boolean retain(String fileName, String sha256, long size, String contentType, BooleanSupplier writeIfMissing) {
+        Boolean written = transactionTemplate.execute(status -> {
+            storedBlobRepository.lockFileName(fileName);
+            storedBlobRepository.addReference(fileName, sha256, size, contentType);
+            return writeIfMissing.getAsBoolean();
+        });
+        return Boolean.TRUE.equals(written);
+    }
+
+    // Drops one reference; deleteFiles runs after commit if nothing references the blob any more
+    public void release(String fileName, Runnable deleteFiles) {
+        transactionTemplate.executeWithoutResult(status -> {
+            storedBlobRepository.lockFileName(fileName);
+            storedBlobRepository.removeReference(fileName);
+        });
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    purgeIfUnreferenced(fileName, deleteFiles);
+                }
+            });
+        } else {
+            purgeIfUnreferenced(fileName, deleteFiles);
+        }
+    }
+
+    private void purgeIfUnreferenced(String fileName, Runnable deleteFiles) {
+        try {
+            purgeTransactionTemplate.executeWithoutResult(status -> {
+                storedBlobRepository.lockFileName(fileName);
+                if (!storedBlobRepository.isReferenced(fileName)) {
+                    storedBlobRepository.deleteIfUnreferenced(fileName);
+                    deleteFiles.run();
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Could not purge blob {}: {}", fileName, e.getMessage());
+        }
+    }
+}
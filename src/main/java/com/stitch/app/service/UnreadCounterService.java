@@ -0,0 +1,260 @@
+package com.stitch.app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stitch.app.dto.CacheStats;
+import com.stitch.app.entity.UnreadCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Unread counts for notifications and messages, kept in unread_counters so reads never
+ * count rows. Counters are changed in the caller's transaction alongside the rows they
+ * count; the cache is written through after commit, and each entry carries the row
+ * version so a late after-commit write never replaces a newer value. Other nodes see
+ * changes once their cached entry expires.
+ *
+ * Every counter write holds a shared advisory lock on its user until commit; the
+ * reconciler repairs one user at a time under the exclusive one, and skips users it
+ * cannot lock right away, so it never blocks writers for more than one small batch.
+ */
+@Service
+public class UnreadCounterService {
+
+    private static final Logger log = LoggerFactory.getLogger(UnreadCounterService.class);
+
+    // peer_id of the per-user total rows
+    public static final long TOTAL = 0L;
+
+    // Advisory lock namespace of per-user counter locks ("UNRD"); the user id is the second key
+    private static final int LOCK_CLASS = 0x554E5244;
+
+    private static final String ADJUST_SQL =
+            "INSERT INTO unread_counters (user_id, kind, peer_id, count, version) " +
+            "SELECT ?, ?, ?, GREATEST(?, 0), 1 " +
+            "FROM (SELECT pg_advisory_xact_lock_shared(" + LOCK_CLASS + ", (? % 2147483647)::int)) AS l " +
+            "ON CONFLICT (user_id, kind, peer_id) DO UPDATE " +
+            "SET count = GREATEST(unread_counters.count + ?, 0), version = unread_counters.version + 1";
+
+    private static final String SELECT_SQL =
+            "SELECT count, version FROM unread_counters WHERE user_id = ? AND kind = ? AND peer_id = ?";
+
+    // Lock-free and possibly stale: only picks the users to recount under their lock
+    private static final String DRIFTED_USERS_SQL =
+            "WITH actual AS (" +
+            "  SELECT user_id, 'NOTIFICATION' AS kind, 0 AS peer_id, COUNT(*) AS count FROM notifications " +
+            "  WHERE is_read = false GROUP BY user_id " +
+            "  UNION ALL SELECT receiver_id, 'MESSAGE', sender_id, COUNT(*) FROM messages " +
+            "  WHERE is_read = false GROUP BY receiver_id, sender_id " +
+            "  UNION ALL SELECT receiver_id, 'MESSAGE', 0, COUNT(*) FROM messages " +
+            "  WHERE is_read = false GROUP BY receiver_id" +
+            ") " +
+            "SELECT DISTINCT user_id FROM actual a FULL JOIN unread_counters c USING (user_id, kind, peer_id) " +
+            "WHERE COALESCE(c.count, -1) <> COALESCE(a.count, 0) ORDER BY user_id LIMIT ?";
+
+    private static final String TRY_LOCK_USER_SQL =
+            "SELECT pg_try_advisory_xact_lock(" + LOCK_CLASS + ", (? % 2147483647)::int)";
+
+    private static final String REPAIR_USER_SQL =
+            "WITH actual AS (" +
+            "  SELECT user_id, 'NOTIFICATION' AS kind, 0 AS peer_id, COUNT(*) AS count FROM notifications " +
+            "  WHERE user_id = ? AND is_read = false GROUP BY user_id " +
+            "  UNION ALL SELECT receiver_id, 'MESSAGE', sender_id, COUNT(*) FROM messages " +
+            "  WHERE receiver_id = ? AND is_read = false GROUP BY receiver_id, sender_id " +
+            "  UNION ALL SELECT receiver_id, 'MESSAGE', 0, COUNT(*) FROM messages " +
+            "  WHERE receiver_id = ? AND is_read = false GROUP BY receiver_id" +
+            "), stored AS (SELECT * FROM unread_counters WHERE user_id = ?) " +
+            "INSERT INTO unread_counters (user_id, kind, peer_id, count, version) " +
+            "SELECT user_id, kind, peer_id, COALESCE(a.count, 0), 1 " +
+            "FROM actual a FULL JOIN stored c USING (user_id, kind, peer_id) " +
+            "WHERE COALESCE(c.count, -1) <> COALESCE(a.count, 0) " +
+            "ON CONFLICT (user_id, kind, peer_id) DO UPDATE " +
+            "SET count = EXCLUDED.count, version = unread_counters.version + 1";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Cache<CounterKey, CachedCount> cache;
+    private final boolean reconcileEnabled;
+    private final int reconcileMaxUsers;
+    private final int reconcileBatchSize;
+
+    public UnreadCounterService(JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${unread.counters.cache.ttl-seconds:60}") long ttlSeconds,
+                                @Value("${unread.counters.cache.max-size:50000}") long maxSize,
+                                @Value("${unread.counters.reconcile.enabled:true}") boolean reconcileEnabled,
+                                @Value("${unread.counters.reconcile.max-users:10000}") int reconcileMaxUsers,
+                                @Value("${unread.counters.reconcile.batch-size:50}") int reconcileBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.reconcileEnabled = reconcileEnabled;
+        this.reconcileMaxUsers = reconcileMaxUsers;
+        this.reconcileBatchSize = reconcileBatchSize;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    public long getUnreadNotifications(Long userId) {
+        return get(new CounterKey(userId, UnreadCounter.Kind.NOTIFICATION, TOTAL));
+    }
+
+    public long getUnreadMessages(Long userId) {
+        return get(new CounterKey(userId, UnreadCounter.Kind.MESSAGE, TOTAL));
+    }
+
+    // Unread messages from peerId to userId
+    public long getUnreadMessagesFrom(Long userId, Long peerId) {
+        return get(new CounterKey(userId, UnreadCounter.Kind.MESSAGE, peerId));
+    }
+
+    // Returns the user's unread notification count after the change, as seen by this transaction
+    public long adjustNotifications(Long userId, long delta) {
+        CounterKey key = new CounterKey(userId, UnreadCounter.Kind.NOTIFICATION, TOTAL);
+        return delta == 0 ? get(key) : adjust(key, delta);
+    }
+
+    // Moves both the conversation counter and the receiver's total
+    public void adjustMessages(Long receiverId, Long senderId, long delta) {
+        adjust(new CounterKey(receiverId, UnreadCounter.Kind.MESSAGE, senderId), delta);
+        adjust(new CounterKey(receiverId, UnreadCounter.Kind.MESSAGE, TOTAL), delta);
+    }
+
+    /**
+     * Applies message deltas for several conversations at once (receiver id to sender id to
+     * delta). Rows are locked in one global order, every conversation row by (receiver,
+     * sender) before any receiver total, which is also the order of the single-pair method
+     * above, so batches and single sends never wait on each other in a cycle.
+     */
+    public void adjustMessages(Map<Long, Map<Long, Long>> deltasByReceiver) {
+        Map<Long, Long> totals = new TreeMap<>();
+        new TreeMap<>(deltasByReceiver).forEach((receiverId, deltas) ->
+                new TreeMap<>(deltas).forEach((senderId, delta) -> {
+                    if (delta != 0) {
+                        adjust(new CounterKey(receiverId, UnreadCounter.Kind.MESSAGE, senderId), delta);
+                        totals.merge(receiverId, delta, Long::sum);
+                    }
+                }));
+        totals.forEach((receiverId, delta) -> adjust(new CounterKey(receiverId, UnreadCounter.Kind.MESSAGE, TOTAL), delta));
+    }
+
+    // One new notification each for a batch of users (broadcast fan-out)
+    public void incrementNotifications(List<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        // Sorted, so concurrent fan-outs lock the rows in the same order
+        List<Long> sorted = userIds.stream().sorted().toList();
+        jdbcTemplate.batchUpdate(ADJUST_SQL, sorted, sorted.size(), (ps, userId) -> {
+            ps.setLong(1, userId);
+            ps.setString(2, UnreadCounter.Kind.NOTIFICATION.name());
+            ps.setLong(3, TOTAL);
+            ps.setLong(4, 1);
+            ps.setLong(5, userId);
+            ps.setLong(6, 1);
+        });
+        List<CounterKey> keys = userIds.stream()
+                .map(userId -> new CounterKey(userId, UnreadCounter.Kind.NOTIFICATION, TOTAL))
+                .toList();
+        afterCommit(() -> cache.invalidateAll(keys));
+    }
+
+    /**
+     * Fixes counters that drifted from notifications and messages (or do not exist yet,
+     * e.g. on the first start). A lock-free scan picks the users whose counters differ;
+     * each is then recounted in a small transaction under its exclusive advisory lock, so
+     * its in-flight counter writes have either committed before the recount or land on
+     * top of it. Users busy at that moment are left for the next run.
+     */
+    @Scheduled(initialDelayString = "${unread.counters.reconcile-initial-delay-ms:0}",
+            fixedDelayString = "${unread.counters.reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        if (!reconcileEnabled) {
+            return;
+        }
+        List<Long> drifted = jdbcTemplate.queryForList(DRIFTED_USERS_SQL, Long.class, reconcileMaxUsers);
+        int repaired = 0;
+        int skipped = 0;
+        for (int from = 0; from < drifted.size(); from += reconcileBatchSize) {
+            List<Long> batch = drifted.subList(from, Math.min(from + reconcileBatchSize, drifted.size()));
+            int[] result = transactionTemplate.execute(status -> {
+                int[] counts = new int[2];
+                for (Long userId : batch) {
+                    if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(TRY_LOCK_USER_SQL, Boolean.class, userId))) {
+                        counts[0] += jdbcTemplate.update(REPAIR_USER_SQL, userId, userId, userId, userId);
+                    } else {
+                        counts[1]++;
+                    }
+                }
+                return counts;
+            });
+            repaired += result[0];
+            skipped += result[1];
+        }
+        if (repaired > 0 || skipped > 0) {
+            log.info("Repaired {} unread counter(s) of {} user(s), {} busy user(s) left for the next run",
+                    repaired, drifted.size() - skipped, skipped);
+            cache.invalidateAll();
+        }
+    }
+
+    public CacheStats getCacheStats() {
+        return CacheStats.from(cache);
+    }
+
+    private long get(CounterKey key) {
+        return cache.get(key, this::load).count();
+    }
+
+    private CachedCount load(CounterKey key) {
+        List<CachedCount> rows = jdbcTemplate.query(SELECT_SQL,
+                (rs, rowNum) -> new CachedCount(rs.getLong("count"), rs.getLong("version")),
+                key.userId(), key.kind().name(), key.peerId());
+        return rows.isEmpty() ? new CachedCount(0, 0) : rows.get(0);
+    }
+
+    private long adjust(CounterKey key, long delta) {
+        if (delta == 0) {
+            return get(key);
+        }
+        CachedCount updated = jdbcTemplate.queryForObject(ADJUST_SQL + " RETURNING count, version",
+                (rs, rowNum) -> new CachedCount(rs.getLong("count"), rs.getLong("version")),
+                key.userId(), key.kind().name(), key.peerId(), delta, key.userId(), delta);
+        afterCommit(() -> cache.asMap().merge(key, updated,
+                (cached, fresh) -> fresh.version() > cached.version() ? fresh : cached));
+        return updated.count();
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private record CounterKey(Long userId, UnreadCounter.Kind kind, Long peerId) {
+    }
+
+    private record CachedCount(long count, long version) {
+    }
+}
@@ -0,0 +1,434 @@
+package com.stitch.app.service;
+
+import com.stitch.app.dto.UploadGcStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Finds upload files that no row references any more (failed requests, swallowed delete
+ * errors) and reclaims them in two steps: unreferenced files older than min-age are moved
+ * to a quarantine directory, and quarantined files are deleted after the retention period
+ * unless something references them again, in which case they are put back.
+ * <p>
+ * Referenced names are loaded once per run into a Bloom filter, so the directory walk
+ * needs no database round trip for the common case; the few files the filter reports as
+ * unreferenced are then verified with an exact query, a page at a time. Abandoned upload
+ * and variant temp files are deleted straight away.
+ */
+@Component
+public class UploadGarbageCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadGarbageCollector.class);
+
+    static final String QUARANTINE_DIR = ".quarantine";
+
+    private static final int SHARD_DEPTH = 3;
+
+    private static final int FETCH_SIZE = 1000;
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+    // Every column that names a stored file; the legacy inspo_image_url holds several
+    private static final String REFERENCED_NAMES_SQL =
+            "SELECT file_name FROM appointment_images " +
+            "UNION ALL SELECT bill_file_name FROM appointments WHERE bill_file_name IS NOT NULL " +
+            "UNION ALL SELECT measurements_file_name FROM appointments WHERE measurements_file_name IS NOT NULL " +
+            "UNION ALL SELECT unnest(string_to_array(inspo_image_url, ',')) FROM appointments WHERE inspo_image_url IS NOT NULL " +
+            "UNION ALL SELECT file_name FROM gallery_images " +
+            "UNION ALL SELECT file_name FROM stored_blobs WHERE ref_count > 0";
+
+    private static final String REFERENCED_NAMES_IN_SQL =
+            "SELECT n FROM unnest(?::text[]) AS n WHERE " +
+            "EXISTS (SELECT 1 FROM appointment_images i WHERE i.file_name = n) " +
+            "OR EXISTS (SELECT 1 FROM gallery_images g WHERE g.file_name = n) " +
+            "OR EXISTS (SELECT 1 FROM stored_blobs b WHERE b.file_name = n AND b.ref_count > 0) " +
+            "OR EXISTS (SELECT 1 FROM appointments a WHERE a.bill_file_name = n OR a.measurements_file_name = n " +
+            "OR n = ANY(string_to_array(a.inspo_image_url, ',')))";
+
+    // Variants belong to whatever original shares their stem, whatever its extension
+    private static final String REFERENCED_STEMS_IN_SQL =
+            "SELECT s FROM unnest(?::text[]) AS s WHERE EXISTS (SELECT 1 FROM (" + REFERENCED_NAMES_SQL + ") r(file_name) " +
+            "WHERE r.file_name = s OR left(r.file_name, length(s) + 1) = s || '.')";
+
+    private record Candidate(Path path, String fileName, String variantStem, long size) {
+    }
+
+    private final BlobStore blobStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final boolean enabled;
+    private final Duration minAge;
+    private final Duration quarantineRetention;
+    private final int pageSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Object statsLock = new Object();
+    private long runs;
+    private LocalDateTime lastRunStartedAt;
+    private long lastRunMillis;
+    private RunCounters lastRun = new RunCounters();
+    private long totalDeletedFiles;
+    private long totalReclaimedBytes;
+
+    public UploadGarbageCollector(BlobStore blobStore,
+                                  JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${file.gc.enabled:true}") boolean enabled,
+                                  @Value("${file.gc.min-age-minutes:1440}") long minAgeMinutes,
+                                  @Value("${file.gc.quarantine-retention-hours:168}") long quarantineRetentionHours,
+                                  @Value("${file.gc.page-size:500}") int pageSize) {
+        this.blobStore = blobStore;
+        this.jdbcTemplate = jdbcTemplate;
+        // The reference scan streams with a cursor, which needs a transaction on PostgreSQL
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.minAge = Duration.ofMinutes(minAgeMinutes);
+        this.quarantineRetention = Duration.ofHours(quarantineRetentionHours);
+        this.pageSize = pageSize;
+    }
+
+    @Scheduled(initialDelayString = "${file.gc.initial-delay-ms:600000}",
+            fixedDelayString = "${file.gc.interval-ms:21600000}")
+    public void scheduledRun() {
+        if (enabled && blobStore instanceof LocalBlobStore) {
+            run();
+        }
+    }
+
+    // Runs one collection unless one is already in progress; returns the stats either way
+    public UploadGcStats run() {
+        // Remote stores are left to bucket lifecycle rules
+        if (!(blobStore instanceof LocalBlobStore localStore) || !running.compareAndSet(false, true)) {
+            return getStats();
+        }
+        try {
+            collect(localStore);
+        } catch (Exception e) {
+            log.warn("Upload garbage collection failed: {}", e.getMessage(), e);
+        } finally {
+            running.set(false);
+        }
+        return getStats();
+    }
+
+    public UploadGcStats getStats() {
+        synchronized (statsLock) {
+            return UploadGcStats.builder()
+                    .running(running.get())
+                    .runs(runs)
+                    .lastRunStartedAt(lastRunStartedAt)
+                    .lastRunMillis(lastRunMillis)
+                    .lastScannedFiles(lastRun.scanned)
+                    .lastQuarantinedFiles(lastRun.quarantined)
+                    .lastQuarantinedBytes(lastRun.quarantinedBytes)
+                    .lastRestoredFiles(lastRun.restored)
+                    .lastDeletedFiles(lastRun.deleted)
+                    .lastReclaimedBytes(lastRun.reclaimedBytes)
+                    .totalDeletedFiles(totalDeletedFiles)
+                    .totalReclaimedBytes(totalReclaimedBytes)
+                    .build();
+        }
+    }
+
+    private void collect(LocalBlobStore localStore) throws IOException {
+        long started = System.currentTimeMillis();
+        LocalDateTime startedAt = LocalDateTime.now();
+        Path root = localStore.getRoot();
+        Path quarantine = Files.createDirectories(root.resolve(QUARANTINE_DIR));
+        RunCounters counters = new RunCounters();
+
+        purgeQuarantine(localStore, quarantine, counters);
+
+        BloomFilter referenced = loadReferencedNames();
+        Instant cutoff = Instant.now().minus(minAge);
+        List<Candidate> page = new ArrayList<>(pageSize);
+        // Flat files at the top, sharded ones two directory levels down
+        try (Stream<Path> files = Files.walk(root, SHARD_DEPTH)) {
+            for (Iterator<Path> it = files.iterator(); it.hasNext(); ) {
+                Path file = it.next();
+                Path relative = root.relativize(file);
+                if (relative.getNameCount() > 1 && relative.getName(0).toString().startsWith(".")) {
+                    // Inside the quarantine or another hidden directory
+                    continue;
+                }
+                String name = file.getFileName().toString();
+                BasicFileAttributes attributes = readAttributes(file);
+                // Hidden entries (the quarantine itself, .gitkeep and the like) are not uploads
+                boolean tempFile = isAbandonedTempFile(name);
+                if ((name.startsWith(".") && !tempFile) || attributes == null || !attributes.isRegularFile()) {
+                    continue;
+                }
+                counters.scanned++;
+                // Grace period: the row naming a fresh file may not be committed yet
+                if (attributes.lastModifiedTime().toInstant().isAfter(cutoff)) {
+                    continue;
+                }
+                if (tempFile) {
+                    if (Files.deleteIfExists(file)) {
+                        counters.deleted++;
+                        counters.reclaimedBytes += attributes.size();
+                    }
+                    continue;
+                }
+                String stem = ImageVariantService.originalStem(name);
+                boolean maybeReferenced = stem != null ? referenced.mightContain(stemKey(stem)) : referenced.mightContain(name);
+                if (!maybeReferenced) {
+                    page.add(new Candidate(file, name, stem, attributes.size()));
+                    if (page.size() >= pageSize) {
+                        quarantine(page, quarantine, counters);
+                        page.clear();
+                    }
+                }
+            }
+        }
+        quarantine(page, quarantine, counters);
+
+        long elapsed = System.currentTimeMillis() - started;
+        synchronized (statsLock) {
+            runs++;
+            lastRunStartedAt = startedAt;
+            lastRunMillis = elapsed;
+            lastRun = counters;
+            totalDeletedFiles += counters.deleted;
+            totalReclaimedBytes += counters.reclaimedBytes;
+        }
+        log.info("Upload GC scanned {} files in {} ms: quarantined {} ({} bytes), restored {}, deleted {} ({} bytes reclaimed)",
+                counters.scanned, elapsed, counters.quarantined, counters.quarantinedBytes,
+                counters.restored, counters.deleted, counters.reclaimedBytes);
+    }
+
+    private void quarantine(List<Candidate> page, Path quarantine, RunCounters counters) throws IOException {
+        Set<Candidate> unreferenced = new HashSet<>(page);
+        unreferenced.removeAll(findReferenced(page));
+        for (Candidate candidate : unreferenced) {
+            Path target = quarantine.resolve(candidate.fileName());
+            try {
+                Files.move(candidate.path(), target, StandardCopyOption.REPLACE_EXISTING);
+                // The retention period counts from the move
+                Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+                counters.quarantined++;
+                counters.quarantinedBytes += candidate.size();
+            } catch (NoSuchFileException e) {
+                // Deleted in the meantime
+            }
+        }
+    }
+
+    private void purgeQuarantine(LocalBlobStore localStore, Path quarantine, RunCounters counters) throws IOException {
+        Instant cutoff = Instant.now().minus(quarantineRetention);
+        List<Candidate> page = new ArrayList<>(pageSize);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(quarantine)) {
+            for (Path file : files) {
+                BasicFileAttributes attributes = readAttributes(file);
+                if (attributes == null || !attributes.isRegularFile()
+                        || attributes.lastModifiedTime().toInstant().isAfter(cutoff)) {
+                    continue;
+                }
+                String name = file.getFileName().toString();
+                page.add(new Candidate(file, name, ImageVariantService.originalStem(name), attributes.size()));
+                if (page.size() >= pageSize) {
+                    purge(localStore, page, counters);
+                    page.clear();
+                }
+            }
+        }
+        purge(localStore, page, counters);
+    }
+
+    private void purge(LocalBlobStore localStore, List<Candidate> page, RunCounters counters) throws IOException {
+        Set<Candidate> referenced = findReferenced(page);
+        for (Candidate candidate : page) {
+            if (referenced.contains(candidate) && !localStore.exists(candidate.fileName())) {
+                // Referenced again (restored row, re-uploaded content): put it back
+                Path original = localStore.storagePath(candidate.fileName());
+                Files.createDirectories(original.getParent());
+                Files.move(candidate.path(), original);
+                counters.restored++;
+            } else if (Files.deleteIfExists(candidate.path())) {
+                counters.deleted++;
+                counters.reclaimedBytes += candidate.size();
+            }
+        }
+    }
+
+    private BloomFilter loadReferencedNames() {
+        return readOnlyTransactionTemplate.execute(status -> {
+            Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM (" + REFERENCED_NAMES_SQL + ") r", Long.class);
+            // Each name goes in twice, as itself and as the stem its variants are found by
+            BloomFilter filter = new BloomFilter(2 * (count == null ? 0 : count), BLOOM_FALSE_POSITIVE_RATE,
+                    ThreadLocalRandom.current().nextLong());
+            RowCallbackHandler handler = rs -> {
+                String name = rs.getString(1);
+                if (name != null && !name.isBlank()) {
+                    filter.put(name);
+                    filter.put(stemKey(stemOf(name)));
+                }
+            };
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(REFERENCED_NAMES_SQL);
+                ps.setFetchSize(FETCH_SIZE);
+                return ps;
+            }, handler);
+            return filter;
+        });
+    }
+
+    // Exact check of the candidates the Bloom filter could not rule out
+    private Set<Candidate> findReferenced(List<Candidate> candidates) {
+        Set<Candidate> referenced = new HashSet<>();
+        if (candidates.isEmpty()) {
+            return referenced;
+        }
+        List<String> names = new ArrayList<>();
+        List<String> stems = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (candidate.variantStem() != null) {
+                stems.add(candidate.variantStem());
+            } else {
+                names.add(candidate.fileName());
+            }
+        }
+        Set<String> referencedNames = new HashSet<>(queryReferenced(REFERENCED_NAMES_IN_SQL, names));
+        Set<String> referencedStems = new HashSet<>(queryReferenced(REFERENCED_STEMS_IN_SQL, stems));
+        for (Candidate candidate : candidates) {
+            boolean isReferenced = candidate.variantStem() != null
+                    ? referencedStems.contains(candidate.variantStem())
+                    : referencedNames.contains(candidate.fileName());
+            if (isReferenced) {
+                referenced.add(candidate);
+            }
+        }
+        return referenced;
+    }
+
+    private List<String> queryReferenced(String sql, List<String> values) {
+        if (values.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("text", values.toArray()));
+            return ps;
+        }, (rs, rowNum) -> rs.getString(1));
+    }
+
+    private static BasicFileAttributes readAttributes(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Left behind by FileStorageService.store or ImageVariantService when the process died mid-write
+    static boolean isAbandonedTempFile(String fileName) {
+        return (fileName.startsWith(".upload-") || fileName.startsWith(".variant-")) && fileName.endsWith(".tmp");
+    }
+
+    private static String stemOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    // Stored names never contain '/', so stems and names can share one filter
+    private static String stemKey(String stem) {
+        return "/" + stem;
+    }
+
+    private static final class RunCounters {
+        long scanned;
+        long quarantined;
+        long quarantinedBytes;
+        long restored;
+        long deleted;
+        long reclaimedBytes;
+    }
+
+    /**
+     * Fixed-size Bloom filter over strings (double hashing on a seeded 64-bit hash). A new
+     * seed per run means a name that collides by bad luck is not kept forever.
+     */
+    static final class BloomFilter {
+
+        private final long[] bits;
+        private final long numBits;
+        private final int numHashes;
+        private final long seed;
+
+        BloomFilter(long expectedInsertions, double falsePositiveRate, long seed) {
+            long n = Math.max(1, expectedInsertions);
+            long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.numBits = Math.max(64, m);
+            this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+            this.bits = new long[(int) ((numBits + 63) / 64)];
+            this.seed = seed;
+        }
+
+        void put(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= numHashes; i++) {
+                long index = Math.floorMod(h1 + (long) i * h2, numBits);
+                bits[(int) (index >>> 6)] |= 1L << index;
+            }
+        }
+
+        boolean mightContain(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= numHashes; i++) {
+                long index = Math.floorMod(h1 + (long) i * h2, numBits);
+                if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 64-bit mixer
+        private long hash(String value) {
+            long h = 0xcbf29ce484222325L ^ seed;
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                h ^= b & 0xFF;
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
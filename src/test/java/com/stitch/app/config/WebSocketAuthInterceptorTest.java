@@ -0,0 +1,67 @@
+package com.stitch.app.config;
+
+import com.stitch.app.entity.User;
+import com.stitch.app.security.JwtService;
+import com.stitch.app.security.PrincipalCache;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.security.Principal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WebSocketAuthInterceptorTest {
+
+    @AfterEach
+    public void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void shouldResolvePrincipalOnConnect() {
+        JwtService jwtService = Mockito.mock(JwtService.class);
+        PrincipalCache principalCache = Mockito.mock(PrincipalCache.class);
+        Claims claims = Mockito.mock(Claims.class);
+        Mockito.when(claims.getSubject()).thenReturn("a@example.com");
+        Mockito.when(jwtService.verifyToken("token")).thenReturn(claims);
+        User user = User.builder().id(42L).email("a@example.com").fullName("Ann").role(User.Role.CUSTOMER).build();
+        Mockito.when(principalCache.load("a@example.com")).thenReturn(user);
+
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.addNativeHeader("Authorization", "Bearer token");
+        accessor.setLeaveMutable(true);
+        Message<byte[]> connect = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        new WebSocketAuthInterceptor(jwtService, principalCache).preSend(connect, Mockito.mock(MessageChannel.class));
+
+        Principal principal = StompHeaderAccessor.wrap(connect).getUser();
+        WebSocketPrincipal wsPrincipal = assertInstanceOf(WebSocketPrincipal.class, principal);
+        assertEquals("42", wsPrincipal.getName());
+        assertEquals(42L, wsPrincipal.getId());
+        assertEquals(User.Role.CUSTOMER, wsPrincipal.getRole());
+        assertEquals("Ann", wsPrincipal.getDisplayName());
+    }
+
+    @Test
+    public void shouldLeaveSessionAnonymousOnInvalidToken() {
+        JwtService jwtService = Mockito.mock(JwtService.class);
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.addNativeHeader("Authorization", "Bearer bad");
+        accessor.setLeaveMutable(true);
+        Message<byte[]> connect = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        new WebSocketAuthInterceptor(jwtService, Mockito.mock(PrincipalCache.class))
+                .preSend(connect, Mockito.mock(MessageChannel.class));
+
+        assertNull(StompHeaderAccessor.wrap(connect).getUser());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+}
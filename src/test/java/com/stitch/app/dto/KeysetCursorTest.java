@@ -0,0 +1,30 @@
+package com.stitch.app.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeysetCursorTest {
+
+    @Test
+    public void shouldRoundTripEncodedCursor() {
+        KeysetCursor cursor = new KeysetCursor(LocalDateTime.of(2024, 5, 1, 10, 15, 30, 123456000), 42L);
+
+        KeysetCursor decoded = KeysetCursor.decode(cursor.encode());
+
+        assertEquals(cursor, decoded);
+    }
+
+    @Test
+    public void shouldTreatBlankCursorAsFirstPage() {
+        assertNull(KeysetCursor.decode(null));
+        assertNull(KeysetCursor.decode(""));
+    }
+
+    @Test
+    public void shouldRejectMalformedCursor() {
+        assertThrows(RuntimeException.class, () -> KeysetCursor.decode("not-a-cursor"));
+    }
+}
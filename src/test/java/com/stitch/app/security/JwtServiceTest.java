@@ -1,5 +1,6 @@
 package com.stitch.app.security;
 
+import io.jsonwebtoken.Claims;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -52,6 +53,35 @@ public class JwtServiceTest {
         assertFalse(jwtService.isTokenValid(token, userDetails));
     }
 
+    @Test
+    public void shouldReturnCachedClaimsForRepeatVerification() throws Exception {
+        setPrivateField(jwtService, "jwtExpiration", 10_000L);
+
+        String token = jwtService.generateToken(userDetails);
+        Claims first = jwtService.verifyToken(token);
+        Claims second = jwtService.verifyToken(token);
+
+        assertNotNull(first);
+        assertEquals("testuser", first.getSubject());
+        assertSame(first, second);
+        assertEquals(1, jwtService.getVerifiedTokenCacheStats().getHits());
+    }
+
+    @Test
+    public void shouldRejectTamperedAndExpiredTokensWithoutCaching() throws Exception {
+        setPrivateField(jwtService, "jwtExpiration", 10_000L);
+        String token = jwtService.generateToken(userDetails);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        setPrivateField(jwtService, "jwtExpiration", -1_000L);
+        String expired = jwtService.generateToken(userDetails);
+
+        assertNull(jwtService.verifyToken(tampered));
+        assertNull(jwtService.verifyToken(expired));
+        assertNull(jwtService.verifyToken(""));
+        assertEquals(0, jwtService.getVerifiedTokenCacheStats().getSize());
+    }
+
     // helper to set private fields
     private static void setPrivateField(Object target, String fieldName, Object value) throws Exception {
         Field field = target.getClass().getDeclaredField(fieldName);
@@ -0,0 +1,63 @@
+package com.stitch.app.security;
+
+import com.stitch.app.dto.CacheStats;
+import com.stitch.app.entity.User;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrincipalCacheTest {
+
+    @Test
+    public void shouldServeRepeatLookupsFromCacheUntilEvicted() {
+        UserDetailsService userDetailsService = Mockito.mock(UserDetailsService.class);
+        UserDetails user = Mockito.mock(UserDetails.class);
+        Mockito.when(userDetailsService.loadUserByUsername("a@example.com")).thenReturn(user);
+
+        PrincipalCache cache = new PrincipalCache(userDetailsService, 300, 100);
+        assertSame(user, cache.load("a@example.com"));
+        assertSame(user, cache.load("a@example.com"));
+        Mockito.verify(userDetailsService, Mockito.times(1)).loadUserByUsername("a@example.com");
+
+        cache.evict("a@example.com");
+        cache.load("a@example.com");
+        Mockito.verify(userDetailsService, Mockito.times(2)).loadUserByUsername("a@example.com");
+
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+    }
+
+    @Test
+    public void shouldNotCacheUnknownUsers() {
+        UserDetailsService userDetailsService = Mockito.mock(UserDetailsService.class);
+        Mockito.when(userDetailsService.loadUserByUsername("missing@example.com"))
+                .thenThrow(new UsernameNotFoundException("missing"));
+
+        PrincipalCache cache = new PrincipalCache(userDetailsService, 300, 100);
+        assertThrows(UsernameNotFoundException.class, () -> cache.load("missing@example.com"));
+        assertThrows(UsernameNotFoundException.class, () -> cache.load("missing@example.com"));
+        Mockito.verify(userDetailsService, Mockito.times(2)).loadUserByUsername("missing@example.com");
+    }
+
+    @Test
+    public void shouldHandEachCallerItsOwnUser() {
+        UserDetailsService userDetailsService = Mockito.mock(UserDetailsService.class);
+        User user = User.builder().id(42L).email("a@example.com").fullName("Ann").role(User.Role.CUSTOMER).isActive(true).build();
+        Mockito.when(userDetailsService.loadUserByUsername("a@example.com")).thenReturn(user);
+
+        PrincipalCache cache = new PrincipalCache(userDetailsService, 300, 100);
+        User first = (User) cache.load("a@example.com");
+        first.setFullName("Changed");
+        User second = (User) cache.load("a@example.com");
+
+        assertNotSame(first, second);
+        assertEquals("Ann", second.getFullName());
+        assertEquals(42L, second.getId());
+        Mockito.verify(userDetailsService, Mockito.times(1)).loadUserByUsername("a@example.com");
+    }
+}
@@ -25,7 +25,7 @@ public class AuthenticationServiceTest {
     private PasswordEncoder passwordEncoder;
     private JwtService jwtService;
     private AuthenticationManager authenticationManager;
-    private NotificationService notificationService;
+    private NotificationFanoutService notificationFanoutService;
 
     @BeforeEach
     public void setUp() {
@@ -33,9 +33,9 @@ public class AuthenticationServiceTest {
         passwordEncoder = Mockito.mock(PasswordEncoder.class);
         jwtService = Mockito.mock(JwtService.class);
         authenticationManager = Mockito.mock(AuthenticationManager.class);
-        notificationService = Mockito.mock(NotificationService.class);
+        notificationFanoutService = Mockito.mock(NotificationFanoutService.class);
 
-        authenticationService = new AuthenticationService(userRepository, passwordEncoder, jwtService, authenticationManager, notificationService);
+        authenticationService = new AuthenticationService(userRepository, passwordEncoder, jwtService, authenticationManager, notificationFanoutService);
     }
 
     @Test
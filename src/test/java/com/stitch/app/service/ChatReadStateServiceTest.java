@@ -0,0 +1,120 @@
+package com.stitch.app.service;
+
+import com.stitch.app.dto.ChatReadReceipt;
+import com.stitch.app.dto.ChatTypingEvent;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChatReadStateServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+    private final SimpMessagingTemplate messagingTemplate = Mockito.mock(SimpMessagingTemplate.class);
+    private final UnreadCounterService unreadCounterService = Mockito.mock(UnreadCounterService.class);
+
+    private ChatReadStateService service(long typingThrottleMs) {
+        Mockito.doAnswer(inv -> {
+            Consumer<Object> action = inv.getArgument(0);
+            action.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(Mockito.any());
+        return new ChatReadStateService(jdbcTemplate, transactionTemplate, messagingTemplate, unreadCounterService,
+                typingThrottleMs, 1000);
+    }
+
+    @Test
+    public void shouldCoalesceReceiptsIntoOneWritePerConversation() {
+        ChatReadStateService service = service(2000);
+        Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.<RowMapper<ChatReadStateService.MarkedRead>>any(),
+                        Mockito.eq(2L), Mockito.eq(1L), Mockito.eq(12L)))
+                .thenReturn(new ChatReadStateService.MarkedRead(3, 9L));
+
+        service.markRead(1L, 2L, 10L);
+        service.markRead(1L, 2L, 12L);
+        service.markRead(1L, 2L, 11L);
+        service.flush();
+
+        verifyMarkWrites(1);
+        Mockito.verify(unreadCounterService).adjustMessages(Map.of(1L, Map.of(2L, -3L)));
+        // The peer hears once, after the write, with the newest message actually marked
+        Mockito.verify(messagingTemplate).convertAndSendToUser("2", ChatReadStateService.READ_RECEIPTS_DESTINATION,
+                new ChatReadReceipt(1L, 9L));
+
+        // Anything at or below the stored mark is dropped without a write
+        service.markRead(1L, 2L, 9L);
+        service.flush();
+        verifyMarkWrites(1);
+    }
+
+    @Test
+    public void shouldKeepMarksWhenTheFlushFails() {
+        ChatReadStateService service = service(2000);
+        Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.<RowMapper<ChatReadStateService.MarkedRead>>any(),
+                        Mockito.eq(2L), Mockito.eq(1L), Mockito.eq(5L)))
+                .thenThrow(new RuntimeException("down"))
+                .thenReturn(new ChatReadStateService.MarkedRead(1, 5L));
+
+        service.markRead(1L, 2L, 5L);
+        service.flush();
+        Mockito.verifyNoInteractions(messagingTemplate);
+        service.flush();
+
+        verifyMarkWrites(2);
+        Mockito.verify(unreadCounterService).adjustMessages(Map.of(1L, Map.of(2L, -1L)));
+        Mockito.verify(messagingTemplate).convertAndSendToUser("2", ChatReadStateService.READ_RECEIPTS_DESTINATION,
+                new ChatReadReceipt(1L, 5L));
+    }
+
+    @Test
+    public void shouldThrottleTypingAndOnlyStopWhatWasStarted() {
+        ChatReadStateService service = service(60000);
+
+        service.typing(1L, 2L, false);
+        service.typing(1L, 2L, true);
+        service.typing(1L, 2L, true);
+        service.typing(1L, 2L, false);
+
+        Mockito.verify(messagingTemplate).convertAndSendToUser("2", ChatReadStateService.TYPING_DESTINATION, new ChatTypingEvent(1L, true));
+        Mockito.verify(messagingTemplate).convertAndSendToUser("2", ChatReadStateService.TYPING_DESTINATION, new ChatTypingEvent(1L, false));
+        Mockito.verifyNoMoreInteractions(messagingTemplate);
+        Mockito.verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    public void shouldOnlySkipReceiptsCoveredByMarkedMessages() {
+        ChatReadStateService service = service(2000);
+        Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.<RowMapper<ChatReadStateService.MarkedRead>>any(),
+                        Mockito.eq(2L), Mockito.eq(1L), Mockito.eq(7L)))
+                .thenReturn(new ChatReadStateService.MarkedRead(0, null));
+
+        service.markRead(1L, 2L, 7L);
+        service.flush();
+        // Nothing was marked, so a message below 7 that commits late is still picked up
+        service.markRead(1L, 2L, 7L);
+        service.flush();
+
+        verifyMarkWrites(2);
+        Mockito.verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    public void shouldRejectReceiptsWithoutPeer() {
+        ChatReadStateService service = service(2000);
+        assertThrows(RuntimeException.class, () -> service.markRead(1L, null, 5L));
+        assertThrows(RuntimeException.class, () -> service.markRead(1L, 1L, 5L));
+    }
+
+    private void verifyMarkWrites(int times) {
+        Mockito.verify(jdbcTemplate, Mockito.times(times)).queryForObject(Mockito.anyString(),
+                Mockito.<RowMapper<ChatReadStateService.MarkedRead>>any(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+}
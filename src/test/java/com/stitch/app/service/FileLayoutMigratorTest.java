@@ -0,0 +1,61 @@
+package com.stitch.app.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileLayoutMigratorTest {
+
+    private static final String NAME = "0b5e2a6c-3f1d-4a4e-9d7c-1f2e3d4c5b6a.png";
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalBlobStore blobStore;
+
+    @BeforeEach
+    public void setUp() {
+        blobStore = new LocalBlobStore(uploadDir, true, false);
+    }
+
+    @Test
+    public void shouldMoveFlatFilesIntoTheirShard() throws Exception {
+        Path flat = Files.write(uploadDir.resolve(NAME), new byte[]{1, 2, 3});
+
+        assertEquals(FileLayoutMigrator.Outcome.MOVED, FileLayoutMigrator.migrateFile(blobStore, flat));
+
+        assertFalse(Files.exists(flat));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(blobStore.storagePath(NAME)));
+    }
+
+    @Test
+    public void shouldNeverOverwriteADifferentFileInTheShard() throws Exception {
+        Path sharded = blobStore.storagePath(NAME);
+        Files.createDirectories(sharded.getParent());
+        Files.write(sharded, new byte[]{9, 9});
+        Path flat = Files.write(uploadDir.resolve(NAME), new byte[]{1, 2, 3});
+
+        assertEquals(FileLayoutMigrator.Outcome.CONFLICT, FileLayoutMigrator.migrateFile(blobStore, flat));
+
+        assertArrayEquals(new byte[]{9, 9}, Files.readAllBytes(sharded));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(flat));
+    }
+
+    @Test
+    public void shouldDropAFlatCopyIdenticalToTheShardedFile() throws Exception {
+        Path sharded = blobStore.storagePath(NAME);
+        Files.createDirectories(sharded.getParent());
+        Files.write(sharded, new byte[]{1, 2, 3});
+        Path flat = Files.write(uploadDir.resolve(NAME), new byte[]{1, 2, 3});
+
+        assertEquals(FileLayoutMigrator.Outcome.DUPLICATE_REMOVED, FileLayoutMigrator.migrateFile(blobStore, flat));
+
+        assertFalse(Files.exists(flat));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(sharded));
+    }
+}
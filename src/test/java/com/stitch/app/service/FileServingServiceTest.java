@@ -0,0 +1,85 @@
+package com.stitch.app.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileServingServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private FileServingService fileServingService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Files.writeString(uploadDir.resolve("abc.png"), "0123456789", StandardCharsets.US_ASCII);
+        fileServingService = new FileServingService(new FileStorageService(uploadDir.toString(), false, new LocalBlobStore(uploadDir, true, false),
+                new ImageVariantService(false, 1, 10, 0.8f), Mockito.mock(StoredBlobService.class)), 3600, 49152, 300);
+    }
+
+    @Test
+    public void shouldParseSingleRanges() {
+        assertEquals(new FileServingService.ByteRange(0, 4), FileServingService.parseRange("bytes=0-4", 10));
+        assertEquals(new FileServingService.ByteRange(5, 9), FileServingService.parseRange("bytes=5-", 10));
+        assertEquals(new FileServingService.ByteRange(7, 9), FileServingService.parseRange("bytes=-3", 10));
+        assertEquals(new FileServingService.ByteRange(2, 9), FileServingService.parseRange("bytes=2-100", 10));
+        assertSame(FileServingService.ByteRange.UNSATISFIABLE, FileServingService.parseRange("bytes=10-", 10));
+        assertNull(FileServingService.parseRange("bytes=0-1,4-5", 10));
+        assertNull(FileServingService.parseRange("items=0-1", 10));
+        assertNull(FileServingService.parseRange(null, 10));
+    }
+
+    @Test
+    public void shouldServePartialContent() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file");
+        request.addHeader("Range", "bytes=2-5");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        fileServingService.serve("abc.png", FileServingService.CachePolicy.PRIVATE, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+        assertEquals("2345", response.getContentAsString());
+        assertEquals("image/png", response.getContentType());
+    }
+
+    @Test
+    public void shouldAnswerConditionalRequestWithNotModified() throws Exception {
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        fileServingService.serve("abc.png", FileServingService.CachePolicy.PUBLIC_IMMUTABLE,
+                new MockHttpServletRequest("GET", "/file"), first);
+        assertEquals(200, first.getStatus());
+        assertEquals("0123456789", first.getContentAsString());
+
+        MockHttpServletRequest revalidate = new MockHttpServletRequest("GET", "/file");
+        revalidate.addHeader("If-None-Match", first.getHeader("ETag"));
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        fileServingService.serve("abc.png", FileServingService.CachePolicy.PUBLIC_IMMUTABLE, revalidate, second);
+
+        assertEquals(304, second.getStatus());
+        assertEquals(0, second.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void shouldRejectMissingFilesAndPathTraversal() throws Exception {
+        MockHttpServletResponse missing = new MockHttpServletResponse();
+        fileServingService.serve("nope.png", FileServingService.CachePolicy.PRIVATE,
+                new MockHttpServletRequest("GET", "/file"), missing);
+        assertEquals(404, missing.getStatus());
+
+        MockHttpServletResponse traversal = new MockHttpServletResponse();
+        fileServingService.serve("..", FileServingService.CachePolicy.PRIVATE,
+                new MockHttpServletRequest("GET", "/file"), traversal);
+        assertEquals(404, traversal.getStatus());
+    }
+}
@@ -0,0 +1,131 @@
+package com.stitch.app.service;
+
+import com.stitch.app.dto.StoredFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageIngestionServiceTest {
+
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D};
+
+    @TempDir
+    Path uploadDir;
+
+    private FileStorageService fileStorageService;
+    private ImageIngestionService imageIngestionService;
+
+    @BeforeEach
+    public void setUp() {
+        fileStorageService = new FileStorageService(uploadDir.toString(), false, new LocalBlobStore(uploadDir, true, false),
+                new ImageVariantService(false, 1, 10, 0.8f), Mockito.mock(StoredBlobService.class));
+        imageIngestionService = new ImageIngestionService(fileStorageService, 1024, 3, 2, 10);
+        imageIngestionService.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        imageIngestionService.shutdown();
+    }
+
+    @Test
+    public void shouldSniffImageSignatures() {
+        assertEquals("image/png", ImageIngestionService.sniffImageType(PNG_HEADER));
+        assertEquals("image/jpeg", ImageIngestionService.sniffImageType(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0}));
+        assertEquals("image/webp", ImageIngestionService.sniffImageType("RIFF\0\0\0\0WEBP".getBytes()));
+        assertEquals("image/heic", ImageIngestionService.sniffImageType("\0\0\0\u0018ftypheic".getBytes()));
+        assertNull(ImageIngestionService.sniffImageType("%PDF-1.7".getBytes()));
+        assertNull(ImageIngestionService.sniffImageType(new byte[0]));
+    }
+
+    @Test
+    public void shouldStoreAllPartsInRequestOrder() throws Exception {
+        List<StoredFile> stored = imageIngestionService.ingest(new MultipartFile[]{png("a.png"), png("b.png"), png("c.png")});
+
+        assertEquals(3, stored.size());
+        for (StoredFile file : stored) {
+            assertTrue(Files.exists(fileStorageService.localPath(file.getFileName()).orElseThrow()));
+            assertEquals(PNG_HEADER.length, file.getSize());
+        }
+    }
+
+    @Test
+    public void shouldRejectInvalidPartBeforeWritingAnything() throws Exception {
+        MultipartFile pdf = new MockMultipartFile("images", "doc.png", "image/png", "%PDF-1.7 ...".getBytes());
+
+        assertThrows(RuntimeException.class, () -> imageIngestionService.ingest(new MultipartFile[]{png("a.png"), pdf}));
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void shouldRejectOversizedAndTooManyParts() throws Exception {
+        MultipartFile big = new MockMultipartFile("images", "big.png", "image/png", new byte[2048]);
+
+        assertThrows(RuntimeException.class, () -> imageIngestionService.ingest(new MultipartFile[]{big}));
+        assertThrows(RuntimeException.class, () -> imageIngestionService.ingest(
+                new MultipartFile[]{png("a.png"), png("b.png"), png("c.png"), png("d.png")}));
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void shouldDiscardStoredFiles() throws Exception {
+        List<StoredFile> stored = imageIngestionService.ingest(new MultipartFile[]{png("a.png"), png("b.png")});
+
+        imageIngestionService.discard(stored);
+
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void shouldReleaseContentAddressedReferencesOnDiscard() throws Exception {
+        StoredBlobService storedBlobService = Mockito.mock(StoredBlobService.class);
+        Mockito.when(storedBlobService.retain(Mockito.anyString(), Mockito.anyString(), Mockito.anyLong(), Mockito.any(), Mockito.any()))
+                .thenAnswer(inv -> inv.<BooleanSupplier>getArgument(4).getAsBoolean());
+        // Both parts share one blob; its file goes with the last reference
+        AtomicInteger references = new AtomicInteger(2);
+        Mockito.doAnswer(inv -> {
+            if (references.decrementAndGet() == 0) {
+                inv.<Runnable>getArgument(1).run();
+            }
+            return null;
+        }).when(storedBlobService).release(Mockito.anyString(), Mockito.any());
+        FileStorageService contentAddressed = new FileStorageService(uploadDir.toString(), true, new LocalBlobStore(uploadDir, true, false),
+                new ImageVariantService(false, 1, 10, 0.8f), storedBlobService);
+        ImageIngestionService ingestion = new ImageIngestionService(contentAddressed, 1024, 3, 2, 10);
+        ingestion.start();
+        try {
+            List<StoredFile> stored = ingestion.ingest(new MultipartFile[]{png("a.png"), png("b.png")});
+            assertEquals(1, countFiles());
+
+            ingestion.discard(stored);
+
+            Mockito.verify(storedBlobService, Mockito.times(2)).release(Mockito.eq(stored.get(0).getFileName()), Mockito.any());
+            assertEquals(0, countFiles());
+        } finally {
+            ingestion.shutdown();
+        }
+    }
+
+    private static MultipartFile png(String name) {
+        return new MockMultipartFile("images", name, "image/png", PNG_HEADER);
+    }
+
+    private long countFiles() throws Exception {
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.stitch.app.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageVariantServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private static BufferedImage noise(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void shouldCreateBoundedJpegVariants() throws Exception {
+        Path original = uploadDir.resolve("photo.png");
+        ImageIO.write(noise(3000, 1500), "png", original.toFile());
+
+        ImageVariantService service = new ImageVariantService(true, 1, 10, 0.8f);
+        service.generate(original);
+
+        BufferedImage thumb = ImageIO.read(uploadDir.resolve("photo_thumb.jpg").toFile());
+        BufferedImage medium = ImageIO.read(uploadDir.resolve("photo_medium.jpg").toFile());
+        assertEquals(320, thumb.getWidth());
+        assertEquals(160, thumb.getHeight());
+        assertEquals(1024, medium.getWidth());
+        assertEquals(512, medium.getHeight());
+
+        service.deleteVariants(original);
+        assertFalse(Files.exists(uploadDir.resolve("photo_thumb.jpg")));
+        assertFalse(Files.exists(uploadDir.resolve("photo_medium.jpg")));
+    }
+
+    @Test
+    public void shouldSkipVariantsLargerThanTheOriginal() throws Exception {
+        Path original = uploadDir.resolve("small.png");
+        ImageIO.write(noise(600, 400), "png", original.toFile());
+
+        new ImageVariantService(true, 1, 10, 0.8f).generate(original);
+
+        assertTrue(Files.exists(uploadDir.resolve("small_thumb.jpg")));
+        assertFalse(Files.exists(uploadDir.resolve("small_medium.jpg")));
+    }
+
+    @Test
+    public void shouldOnlyKeepVariantsSmallerThanTheOriginal() throws Exception {
+        // A flat image compresses to almost nothing as PNG, so JPEG variants may come out larger
+        Path original = uploadDir.resolve("flat.png");
+        ImageIO.write(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB), "png", original.toFile());
+
+        new ImageVariantService(true, 1, 10, 0.8f).generate(original);
+
+        for (String name : new String[]{"flat_thumb.jpg", "flat_medium.jpg"}) {
+            Path variant = uploadDir.resolve(name);
+            assertTrue(!Files.exists(variant) || Files.size(variant) < Files.size(original), name);
+        }
+    }
+
+    // A JPEG carrying the given EXIF orientation in an APP1 segment right after SOI
+    private static byte[] jpegWithOrientation(BufferedImage image, int orientation) throws Exception {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", jpeg);
+        byte[] encoded = jpeg.toByteArray();
+        ByteBuffer app1 = ByteBuffer.allocate(2 + 2 + 6 + 8 + 2 + 12 + 4);
+        app1.putShort((short) 0xFFE1).putShort((short) (app1.capacity() - 2))
+                .put("Exif\0\0".getBytes(StandardCharsets.ISO_8859_1))
+                .put("MM".getBytes(StandardCharsets.ISO_8859_1)).putShort((short) 42).putInt(8)
+                .putShort((short) 1)
+                .putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0)
+                .putInt(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(encoded, 0, 2);
+        out.write(app1.array());
+        out.write(encoded, 2, encoded.length - 2);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void shouldApplyExifOrientationToVariants() throws Exception {
+        BufferedImage stored = noise(1200, 600);
+        Graphics2D g = stored.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 300, 150);
+        g.setColor(Color.BLUE);
+        g.fillRect(900, 450, 300, 150);
+        g.dispose();
+        Path original = uploadDir.resolve("portrait.jpg");
+        Files.write(original, jpegWithOrientation(stored, 6));
+        assertEquals(6, ImageVariantService.readExifOrientation(original));
+
+        new ImageVariantService(true, 1, 10, 0.8f).generate(original);
+
+        // Shown rotated clockwise: stored top-left ends up top-right, stored bottom-right bottom-left
+        BufferedImage thumb = ImageIO.read(uploadDir.resolve("portrait_thumb.jpg").toFile());
+        assertEquals(160, thumb.getWidth());
+        assertEquals(320, thumb.getHeight());
+        assertEquals(Color.RED.getRGB(), nearest(thumb.getRGB(150, 10)));
+        assertEquals(Color.BLUE.getRGB(), nearest(thumb.getRGB(10, 310)));
+    }
+
+    // Snaps a JPEG-decoded pixel to pure red or blue, or leaves it as is
+    private static int nearest(int rgb) {
+        Color c = new Color(rgb);
+        if (c.getRed() > 200 && c.getGreen() < 60 && c.getBlue() < 60) {
+            return Color.RED.getRGB();
+        }
+        if (c.getBlue() > 200 && c.getRed() < 60 && c.getGreen() < 60) {
+            return Color.BLUE.getRGB();
+        }
+        return rgb;
+    }
+
+    @Test
+    public void shouldTreatImagesWithoutExifAsUpright() throws Exception {
+        Path png = uploadDir.resolve("plain.png");
+        ImageIO.write(noise(10, 10), "png", png.toFile());
+        assertEquals(1, ImageVariantService.readExifOrientation(png));
+    }
+
+    @Test
+    public void shouldMapSizeParameter() {
+        assertEquals(ImageVariantService.Variant.THUMB, ImageVariantService.Variant.fromParam("thumb"));
+        assertEquals(ImageVariantService.Variant.MEDIUM, ImageVariantService.Variant.fromParam("MEDIUM"));
+        assertNull(ImageVariantService.Variant.fromParam("original"));
+        assertNull(ImageVariantService.Variant.fromParam(null));
+    }
+}
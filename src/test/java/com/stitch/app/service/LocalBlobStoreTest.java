@@ -0,0 +1,62 @@
+package com.stitch.app.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalBlobStoreTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalBlobStore blobStore;
+
+    @BeforeEach
+    public void setUp() {
+        blobStore = new LocalBlobStore(uploadDir, true, false);
+    }
+
+    @Test
+    public void shouldKeepVariantsInTheShardOfTheirOriginal() {
+        String original = "0b5e2a6c-3f1d-4a4e-9d7c-1f2e3d4c5b6a.png";
+        String shard = LocalBlobStore.shardPrefix(original);
+
+        assertTrue(shard.matches("[0-9a-f]{2}/[0-9a-f]{2}"));
+        assertEquals(shard, LocalBlobStore.shardPrefix(
+                ImageVariantService.variantFileName(original, ImageVariantService.Variant.THUMB)));
+        assertEquals(shard, LocalBlobStore.shardPrefix(
+                ImageVariantService.variantFileName(original, ImageVariantService.Variant.MEDIUM)));
+    }
+
+    @Test
+    public void shouldStoreNewFilesInShardDirectories() {
+        FileStorageService fileStorageService = new FileStorageService(uploadDir.toString(), false, blobStore,
+                new ImageVariantService(false, 1, 10, 0.8f), Mockito.mock(StoredBlobService.class));
+
+        String fileName = fileStorageService.storeFile(new MockMultipartFile("file", "a.png", "image/png", new byte[]{1, 2, 3}));
+
+        Path stored = uploadDir.resolve(LocalBlobStore.shardPrefix(fileName)).resolve(fileName);
+        assertTrue(Files.exists(stored));
+        assertEquals(stored, fileStorageService.localPath(fileName).orElseThrow());
+    }
+
+    @Test
+    public void shouldFindFilesStillInTheFlatLayout() throws Exception {
+        Files.write(uploadDir.resolve("legacy.png"), new byte[]{1});
+
+        assertEquals(uploadDir.resolve("legacy.png"), blobStore.resolve("legacy.png"));
+        assertTrue(blobStore.exists("legacy.png"));
+
+        Path sharded = blobStore.storagePath("legacy.png");
+        Files.createDirectories(sharded.getParent());
+        Files.move(uploadDir.resolve("legacy.png"), sharded);
+        assertEquals(sharded, blobStore.resolve("legacy.png"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.stitch.app.service;
+
+import com.stitch.app.dto.MailDispatchStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MailDispatchServiceTest {
+
+    private MailDispatchService dispatcher;
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldSendQueuedMessagesInBatches() throws Exception {
+        JavaMailSender sender = Mockito.mock(JavaMailSender.class);
+        AtomicInteger delivered = new AtomicInteger();
+        Mockito.doAnswer(inv -> {
+            delivered.addAndGet(inv.getArguments().length);
+            return null;
+        }).when(sender).send(Mockito.any(SimpleMailMessage[].class));
+
+        dispatcher = new MailDispatchService(sender, 100, 1, 10, 3, 1, 100, false);
+        for (int i = 0; i < 25; i++) {
+            assertTrue(dispatcher.enqueue("user" + i + "@example.com", "Subject", "Body"));
+        }
+        dispatcher.start();
+        dispatcher.shutdown();
+
+        MailDispatchStats stats = dispatcher.getStats();
+        assertEquals(25, delivered.get());
+        assertEquals(25, stats.getSent());
+        assertEquals(0, stats.getQueueDepth());
+        // 25 messages with a batch size of 10 can not take fewer than 3 sends
+        assertTrue(stats.getBatches() >= 3 && stats.getBatches() < 25);
+    }
+
+    @Test
+    public void shouldRetryOnlyFailedMessages() throws Exception {
+        JavaMailSender sender = Mockito.mock(JavaMailSender.class);
+        AtomicInteger calls = new AtomicInteger();
+        Mockito.doAnswer(inv -> {
+            Object[] messages = inv.getArguments();
+            if (calls.incrementAndGet() == 1) {
+                throw new MailSendException(Map.of(messages[0], new RuntimeException("boom")));
+            }
+            assertEquals(1, messages.length);
+            return null;
+        }).when(sender).send(Mockito.any(SimpleMailMessage[].class));
+
+        dispatcher = new MailDispatchService(sender, 100, 1, 10, 3, 1, 100, false);
+        dispatcher.enqueue("a@example.com", "Subject", "Body");
+        dispatcher.enqueue("b@example.com", "Subject", "Body");
+        dispatcher.start();
+        dispatcher.shutdown();
+
+        MailDispatchStats stats = dispatcher.getStats();
+        assertEquals(2, calls.get());
+        assertEquals(2, stats.getSent());
+        assertEquals(1, stats.getRetried());
+        assertEquals(0, stats.getFailed());
+    }
+
+    @Test
+    public void shouldRejectWhenQueueIsFull() throws Exception {
+        JavaMailSender sender = Mockito.mock(JavaMailSender.class);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(inv -> release.await(5, TimeUnit.SECONDS)).when(sender).send(Mockito.any(SimpleMailMessage[].class));
+
+        dispatcher = new MailDispatchService(sender, 1, 1, 1, 1, 1, 10, false);
+        assertTrue(dispatcher.enqueue("a@example.com", "Subject", "Body"));
+        assertFalse(dispatcher.enqueue("b@example.com", "Subject", "Body"));
+        release.countDown();
+
+        assertEquals(1, dispatcher.getStats().getRejected());
+    }
+
+    @Test
+    public void shouldDropAfterCommitMailWithoutWaitingWhenQueueIsFull() throws Exception {
+        JavaMailSender sender = Mockito.mock(JavaMailSender.class);
+
+        // Workers not started, so the single slot stays taken
+        dispatcher = new MailDispatchService(sender, 1, 1, 1, 1, 1, 5000, false);
+        long start = System.nanoTime();
+        dispatcher.enqueueAfterCommit(List.of("a@example.com", "b@example.com", "c@example.com"), "Subject", "Body");
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        MailDispatchStats stats = dispatcher.getStats();
+        assertTrue(elapsedMs < 1000, "took " + elapsedMs + " ms");
+        assertEquals(1, stats.getEnqueued());
+        assertEquals(2, stats.getRejected());
+        assertEquals(2, stats.getDroppedAfterCommit());
+    }
+}
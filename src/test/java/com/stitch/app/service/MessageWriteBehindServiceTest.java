@@ -0,0 +1,175 @@
+package com.stitch.app.service;
+
+import com.stitch.app.dto.MessageDTO;
+import com.stitch.app.repository.ConversationRepository;
+import com.stitch.app.repository.MessageRepository;
+import com.stitch.app.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageWriteBehindServiceTest {
+
+    private MessageWriteBehindService writer;
+    private MessageRepository messageRepository;
+    private UserRepository userRepository;
+    private SimpMessagingTemplate messagingTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        messageRepository = Mockito.mock(MessageRepository.class);
+        userRepository = Mockito.mock(UserRepository.class);
+        messagingTemplate = Mockito.mock(SimpMessagingTemplate.class);
+        Mockito.when(userRepository.existsById(2L)).thenReturn(true);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    // Every allocated id is inserted
+    private static JdbcTemplate sequence(AtomicLong next) {
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        AtomicReference<List<Long>> allocated = new AtomicReference<>(List.of());
+        Mockito.when(jdbcTemplate.queryForList(Mockito.anyString(), Mockito.eq(Long.class), Mockito.<Object>any()))
+                .thenAnswer(inv -> {
+                    int count = inv.getArgument(2);
+                    long first = next.getAndAdd(count);
+                    allocated.set(LongStream.range(first, first + count).boxed().toList());
+                    return allocated.get();
+                });
+        Mockito.when(jdbcTemplate.query(Mockito.anyString(), Mockito.any(PreparedStatementSetter.class), Mockito.any(RowMapper.class)))
+                .thenAnswer(inv -> allocated.get());
+        return jdbcTemplate;
+    }
+
+    private static TransactionTemplate transactions() {
+        TransactionTemplate tx = Mockito.mock(TransactionTemplate.class);
+        Mockito.when(tx.execute(Mockito.any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        return tx;
+    }
+
+    private MessageWriteBehindService writer(JdbcTemplate jdbcTemplate, TransactionTemplate tx, String ack, int capacity) {
+        return new MessageWriteBehindService(jdbcTemplate, tx, Mockito.mock(UnreadCounterService.class),
+                Mockito.mock(ConversationRepository.class), messageRepository, userRepository, messagingTemplate,
+                true, ack, capacity, 10, 1, 0, 1000, 2, 1, 600);
+    }
+
+    @Test
+    public void shouldPushOnlyAfterTheFlushAndAnswerRetriesWithTheOriginal() throws Exception {
+        TransactionTemplate tx = Mockito.mock(TransactionTemplate.class);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(tx.execute(Mockito.any())).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+        });
+        writer = writer(sequence(new AtomicLong(100)), tx, "queued", 100);
+        writer.start();
+
+        MessageDTO first = writer.submit(1L, "Ann", 2L, "hi", "key-1");
+        MessageDTO retry = writer.submit(1L, "Ann", 2L, "hi", "key-1");
+
+        // Acknowledged without an id, and nobody sees it before it is stored
+        assertNull(first.getId());
+        assertSame(first, retry);
+        Mockito.verifyNoInteractions(messagingTemplate);
+
+        release.countDown();
+        Mockito.verify(messagingTemplate, Mockito.timeout(5000)).convertAndSendToUser(
+                Mockito.eq("2"), Mockito.eq(MessageService.MESSAGES_DESTINATION), Mockito.any(Object.class));
+        MessageDTO later = writer.submit(1L, "Ann", 2L, "hi", "key-1");
+        assertEquals(100L, later.getId());
+        assertEquals(2, writer.getStats().getDuplicates());
+        Mockito.verify(messagingTemplate, Mockito.times(1)).convertAndSendToUser(
+                Mockito.anyString(), Mockito.anyString(), Mockito.any(Object.class));
+    }
+
+    @Test
+    public void shouldAnswerRetriesOfOlderSendsFromTheDatabase() {
+        MessageDTO stored = MessageDTO.builder().id(7L).senderId(1L).receiverId(2L).content("hi").clientMessageId("key-1").build();
+        Mockito.when(messageRepository.findByClientMessageId(1L, "key-1")).thenReturn(Optional.of(stored));
+        JdbcTemplate jdbcTemplate = sequence(new AtomicLong(1));
+        writer = writer(jdbcTemplate, transactions(), "queued", 100);
+        writer.start();
+
+        assertSame(stored, writer.submit(1L, "Ann", 2L, "hi", "key-1"));
+        assertEquals(0, writer.getStats().getAccepted());
+        Mockito.verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    public void shouldRejectUnknownReceivers() {
+        writer = writer(sequence(new AtomicLong(1)), transactions(), "queued", 100);
+        writer.start();
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> writer.submit(1L, "Ann", 3L, "hi", null));
+        assertEquals("Receiver not found", e.getMessage());
+        assertEquals(0, writer.getStats().getAccepted());
+    }
+
+    @Test
+    public void shouldHandBackMessagesWhenTheBufferIsFull() throws Exception {
+        TransactionTemplate tx = Mockito.mock(TransactionTemplate.class);
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(tx.execute(Mockito.any())).thenAnswer(inv -> {
+            flushing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+        });
+        writer = writer(sequence(new AtomicLong(1)), tx, "queued", 1);
+        writer.start();
+
+        assertNotNull(writer.submit(1L, "Ann", 2L, "one", null));
+        assertTrue(flushing.await(5, TimeUnit.SECONDS));
+        assertNotNull(writer.submit(1L, "Ann", 2L, "two", null));
+        assertNull(writer.submit(1L, "Ann", 2L, "three", null));
+        release.countDown();
+
+        assertEquals(1, writer.getStats().getRejected());
+    }
+
+    @Test
+    public void shouldWaitForTheCommitInPersistedMode() throws Exception {
+        TransactionTemplate tx = transactions();
+        writer = writer(sequence(new AtomicLong(1)), tx, "persisted", 100);
+        writer.start();
+
+        MessageDTO stored = writer.submit(1L, "Ann", 2L, "hi", null);
+        assertEquals(1L, stored.getId());
+        Mockito.verify(messagingTemplate).convertAndSendToUser("2", MessageService.MESSAGES_DESTINATION, stored);
+
+        Mockito.doThrow(new QueryTimeoutException("down")).when(tx).execute(Mockito.any());
+        assertThrows(RuntimeException.class, () -> writer.submit(1L, "Ann", 2L, "lost", null));
+        assertEquals(1, writer.getStats().getFailed());
+    }
+
+    @Test
+    public void shouldRejectUnknownAckMode() {
+        assertThrows(IllegalStateException.class,
+                () -> writer(Mockito.mock(JdbcTemplate.class), Mockito.mock(TransactionTemplate.class), "fsync", 10));
+        writer = null;
+    }
+}
@@ -0,0 +1,226 @@
+package com.stitch.app.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3BlobStoreTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private S3BlobStore blobStore;
+
+    // Consumer-style calls run the SDK's default methods, which build the request and end up in the stubbed overloads
+    private final S3Client s3 = Mockito.mock(S3Client.class, Mockito.withSettings().defaultAnswer(Mockito.CALLS_REAL_METHODS));
+
+    @BeforeEach
+    public void setUp() {
+        // Configured as for a local MinIO; presigning is pure computation, nothing is contacted
+        StaticCredentialsProvider credentials = StaticCredentialsProvider.create(AwsBasicCredentials.create("minio", "minio123"));
+        S3Configuration pathStyle = S3Configuration.builder().pathStyleAccessEnabled(true).build();
+        URI endpoint = URI.create("http://localhost:9000");
+        blobStore = new S3BlobStore(
+                S3Client.builder().region(Region.US_EAST_1).credentialsProvider(credentials)
+                        .serviceConfiguration(pathStyle).endpointOverride(endpoint).build(),
+                S3Presigner.builder().region(Region.US_EAST_1).credentialsProvider(credentials)
+                        .serviceConfiguration(pathStyle).endpointOverride(endpoint).build(),
+                "uploads", "stitch/", 16 * 1024 * 1024, 8 * 1024 * 1024);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        blobStore.close();
+    }
+
+    @Test
+    public void shouldPresignPathStyleGetUrls() {
+        URI url = blobStore.presignedGetUrl("abc.png", Duration.ofMinutes(5), "image/png",
+                "attachment; filename=\"abc.png\"").orElseThrow();
+
+        assertEquals("localhost", url.getHost());
+        assertEquals(9000, url.getPort());
+        assertEquals("/uploads/stitch/abc.png", url.getPath());
+        assertTrue(url.getQuery().contains("X-Amz-Signature="));
+        assertTrue(url.getQuery().contains("X-Amz-Expires=300"));
+        assertTrue(url.getQuery().contains("response-content-type=image/png"));
+    }
+
+    @Test
+    public void shouldNotExposeLocalPaths() {
+        assertTrue(blobStore.localPath("abc.png").isEmpty());
+    }
+
+    @Test
+    public void shouldPutSmallFilesInOneRequestAndRemoveTheStagedFile() throws Exception {
+        S3BlobStore store = mockedStore(1024);
+        Path staged = staged(100);
+        Mockito.doReturn(PutObjectResponse.builder().build())
+                .when(s3).putObject(Mockito.any(PutObjectRequest.class), Mockito.any(RequestBody.class));
+
+        store.put("abc.png", staged, "image/png");
+
+        ArgumentCaptor<PutObjectRequest> request = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(s3).putObject(request.capture(), Mockito.any(RequestBody.class));
+        assertEquals("uploads", request.getValue().bucket());
+        assertEquals("stitch/abc.png", request.getValue().key());
+        assertEquals("image/png", request.getValue().contentType());
+        Mockito.verify(s3, Mockito.never()).createMultipartUpload(Mockito.any(CreateMultipartUploadRequest.class));
+        assertFalse(Files.exists(staged));
+    }
+
+    @Test
+    public void shouldUploadLargeFilesInPartsAndCompleteInOrder() throws Exception {
+        S3BlobStore store = mockedStore(1024);
+        Path staged = staged(PART_SIZE + 10);
+        stubCreateMultipartUpload();
+        Mockito.doReturn(UploadPartResponse.builder().eTag("etag-1").build(), UploadPartResponse.builder().eTag("etag-2").build())
+                .when(s3).uploadPart(Mockito.any(UploadPartRequest.class), Mockito.any(RequestBody.class));
+        Mockito.doReturn(CompleteMultipartUploadResponse.builder().build())
+                .when(s3).completeMultipartUpload(Mockito.any(CompleteMultipartUploadRequest.class));
+
+        store.put("big.png", staged, "image/png");
+
+        ArgumentCaptor<RequestBody> bodies = ArgumentCaptor.forClass(RequestBody.class);
+        Mockito.verify(s3, Mockito.times(2)).uploadPart(Mockito.any(UploadPartRequest.class), bodies.capture());
+        assertEquals(List.of((long) PART_SIZE, 10L), bodies.getAllValues().stream().map(body -> body.optionalContentLength().orElseThrow()).toList());
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        Mockito.verify(s3).completeMultipartUpload(complete.capture());
+        assertEquals("upload-1", complete.getValue().uploadId());
+        assertEquals("stitch/big.png", complete.getValue().key());
+        List<CompletedPart> parts = complete.getValue().multipartUpload().parts();
+        assertEquals(List.of(1, 2), parts.stream().map(CompletedPart::partNumber).toList());
+        assertEquals(List.of("etag-1", "etag-2"), parts.stream().map(CompletedPart::eTag).toList());
+        Mockito.verify(s3, Mockito.never()).abortMultipartUpload(Mockito.any(AbortMultipartUploadRequest.class));
+        assertFalse(Files.exists(staged));
+    }
+
+    @Test
+    public void shouldAbortTheMultipartUploadWhenAPartFails() throws Exception {
+        S3BlobStore store = mockedStore(1024);
+        Path staged = staged(PART_SIZE + 10);
+        stubCreateMultipartUpload();
+        Mockito.doReturn(UploadPartResponse.builder().eTag("etag-1").build())
+                .doThrow(S3Exception.builder().statusCode(500).message("boom").build())
+                .when(s3).uploadPart(Mockito.any(UploadPartRequest.class), Mockito.any(RequestBody.class));
+        Mockito.doReturn(null).when(s3).abortMultipartUpload(Mockito.any(AbortMultipartUploadRequest.class));
+
+        assertThrows(S3Exception.class, () -> store.put("big.png", staged, "image/png"));
+
+        ArgumentCaptor<AbortMultipartUploadRequest> abort = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        Mockito.verify(s3).abortMultipartUpload(abort.capture());
+        assertEquals("upload-1", abort.getValue().uploadId());
+        assertEquals("stitch/big.png", abort.getValue().key());
+        Mockito.verify(s3, Mockito.never()).completeMultipartUpload(Mockito.any(CompleteMultipartUploadRequest.class));
+        assertFalse(Files.exists(staged));
+    }
+
+    @Test
+    public void shouldReportExistenceFromHeadObject() {
+        S3BlobStore store = mockedStore(1024);
+        Mockito.doReturn(HeadObjectResponse.builder().build())
+                .doThrow(NoSuchKeyException.builder().statusCode(404).build())
+                .doThrow(S3Exception.builder().statusCode(404).build())
+                .doThrow(S3Exception.builder().statusCode(403).build())
+                .when(s3).headObject(Mockito.any(HeadObjectRequest.class));
+
+        assertTrue(store.exists("a.png"));
+        assertFalse(store.exists("a.png"));
+        assertFalse(store.exists("a.png"));
+        // Anything but "not found" must not read as a missing file
+        assertThrows(S3Exception.class, () -> store.exists("a.png"));
+
+        ArgumentCaptor<HeadObjectRequest> request = ArgumentCaptor.forClass(HeadObjectRequest.class);
+        Mockito.verify(s3, Mockito.times(4)).headObject(request.capture());
+        assertEquals("stitch/a.png", request.getValue().key());
+    }
+
+    @Test
+    public void shouldDeleteUnderTheKeyPrefix() {
+        S3BlobStore store = mockedStore(1024);
+        Mockito.doReturn(DeleteObjectResponse.builder().build()).when(s3).deleteObject(Mockito.any(DeleteObjectRequest.class));
+
+        assertTrue(store.delete("a.png"));
+
+        ArgumentCaptor<DeleteObjectRequest> request = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        Mockito.verify(s3).deleteObject(request.capture());
+        assertEquals("uploads", request.getValue().bucket());
+        assertEquals("stitch/a.png", request.getValue().key());
+    }
+
+    @Test
+    public void shouldOpenObjectsAndMapMissingKeysToNoSuchFile() throws Exception {
+        S3BlobStore store = mockedStore(1024);
+        Mockito.doReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                        AbortableInputStream.create(new ByteArrayInputStream(new byte[]{1, 2, 3}))))
+                .doThrow(NoSuchKeyException.builder().statusCode(404).build())
+                .when(s3).getObject(Mockito.any(GetObjectRequest.class));
+
+        try (InputStream in = store.open("a.png")) {
+            assertArrayEquals(new byte[]{1, 2, 3}, in.readAllBytes());
+        }
+        assertThrows(NoSuchFileException.class, () -> store.open("gone.png"));
+
+        ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+        Mockito.verify(s3, Mockito.times(2)).getObject(request.capture());
+        assertEquals("stitch/gone.png", request.getValue().key());
+    }
+
+    private S3BlobStore mockedStore(long multipartThresholdBytes) {
+        return new S3BlobStore(s3, Mockito.mock(S3Presigner.class), "uploads", "stitch/", multipartThresholdBytes, PART_SIZE);
+    }
+
+    private void stubCreateMultipartUpload() {
+        Mockito.doReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build())
+                .when(s3).createMultipartUpload(Mockito.any(CreateMultipartUploadRequest.class));
+    }
+
+    private Path staged(int size) throws Exception {
+        Path file = Files.createTempFile(tempDir, ".upload-", ".tmp");
+        Files.write(file, new byte[size]);
+        return file;
+    }
+}
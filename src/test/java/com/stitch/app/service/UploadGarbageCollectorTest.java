@@ -0,0 +1,48 @@
+package com.stitch.app.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadGarbageCollectorTest {
+
+    @Test
+    public void bloomFilterShouldHaveNoFalseNegatives() {
+        UploadGarbageCollector.BloomFilter filter = new UploadGarbageCollector.BloomFilter(10_000, 0.01, 42L);
+        String[] names = new String[10_000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = UUID.randomUUID() + ".png";
+            filter.put(names[i]);
+        }
+
+        for (String name : names) {
+            assertTrue(filter.mightContain(name));
+        }
+    }
+
+    @Test
+    public void bloomFilterShouldStayNearConfiguredFalsePositiveRate() {
+        UploadGarbageCollector.BloomFilter filter = new UploadGarbageCollector.BloomFilter(10_000, 0.01, 7L);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(UUID.randomUUID() + ".png");
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(UUID.randomUUID() + ".jpg")) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+    }
+
+    @Test
+    public void shouldRecognizeAbandonedTempFiles() {
+        assertTrue(UploadGarbageCollector.isAbandonedTempFile(".upload-123456.tmp"));
+        assertTrue(UploadGarbageCollector.isAbandonedTempFile(".variant-987.tmp"));
+        assertFalse(UploadGarbageCollector.isAbandonedTempFile("upload-123.tmp"));
+        assertFalse(UploadGarbageCollector.isAbandonedTempFile(".upload-123.png"));
+    }
+}